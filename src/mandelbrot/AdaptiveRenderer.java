@@ -0,0 +1,163 @@
+package mandelbrot;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders the upscaled picture with antialiasing only where it is needed. First one sample in the middle of every
+ * picture pixel is calculated, then every picture pixel with a neighbour that escaped after a different number of
+ * iterations gets all its samples. The other pixels are inside a band, so their samples are filled with the one
+ * that was calculated and the antialiasing gives them the same color as all samples would.
+ *
+ * Both passes are handed out to the threads by TileRenderer, a tile of the picture at a time.
+ */
+
+public class AdaptiveRenderer {
+
+	private PixelKernel kernel;
+	private float [] IterationsUpscaled;
+	private int width, height, upscalingwidth, upscalingheight;
+
+	//pixels whose neighbours escaped more than this many iterations apart get all their samples
+	private int treshold;
+
+	private LongAdder iteratedpixels;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public AdaptiveRenderer(){
+		treshold = 0;
+		iteratedpixels = new LongAdder();
+	}
+
+	/**
+	 * Renders the whole upscaled picture into the array with the kernel. The kernel must already have its settings
+	 * for the frame and the array must be cleared. w and h is the size of the picture, not of the upscaled picture
+	 */
+	public void render(TileRenderer tiles, PixelKernel k, float [] iterationsupscaled, int w, int h, int uw, int uh){
+
+		long starttime = System.currentTimeMillis();
+
+		kernel = k;
+		IterationsUpscaled = iterationsupscaled;
+		width = w;
+		height = h;
+		upscalingwidth = uw;
+		upscalingheight = uh;
+
+		iteratedpixels.reset();
+
+		tiles.render(new Samples(), width, height);
+		tiles.render(new Edges(), width, height);
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Returns the position of the sample in the middle of a picture pixel in the upscaled picture
+	 */
+	private int getSample(int x, int y){
+		return (y * upscalingheight + upscalingheight / 2) * width * upscalingwidth + x * upscalingwidth + upscalingwidth / 2;
+	}
+
+	/**
+	 * Calculates the sample in the middle of every picture pixel of a tile
+	 */
+	private class Samples implements PixelKernel{
+
+		public void calculatePixel(int x, int y){
+			calculateTile(x, y, x + 1, y + 1);
+		}
+
+		@Override
+		public void calculateTile(int left, int top, int right, int bottom){
+
+			for(int y = top; y < bottom; y++){
+				kernel.calculateRow(left * upscalingwidth + upscalingwidth / 2, y * upscalingheight + upscalingheight / 2,
+						right - left, upscalingwidth);
+			}
+
+			iteratedpixels.add((right - left) * (bottom - top));
+		}
+	}
+
+	/**
+	 * Calculates all samples of the picture pixels of a tile that are on an edge, and fills the others
+	 */
+	private class Edges implements PixelKernel{
+
+		public void calculatePixel(int x, int y){
+
+			if(isEdge(x, y)){
+				kernel.calculateTile(x * upscalingwidth, y * upscalingheight, (x + 1) * upscalingwidth, (y + 1) * upscalingheight);
+				iteratedpixels.add(upscalingwidth * upscalingheight - 1);
+			}
+
+			else{
+				float value = IterationsUpscaled[getSample(x, y)];
+
+				for(int ysample = y * upscalingheight; ysample < (y + 1) * upscalingheight; ysample++){
+					for(int xsample = x * upscalingwidth; xsample < (x + 1) * upscalingwidth; xsample++){
+						IterationsUpscaled[ysample * width * upscalingwidth + xsample] = value;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns true if one of the 8 neighbours of the picture pixel escaped after another number of iterations,
+		 * or only one of them is in the set
+		 */
+		private boolean isEdge(int x, int y){
+
+			float value = IterationsUpscaled[getSample(x, y)];
+
+			for(int yneighbour = Math.max(0, y - 1); yneighbour <= Math.min(height - 1, y + 1); yneighbour++){
+				for(int xneighbour = Math.max(0, x - 1); xneighbour <= Math.min(width - 1, x + 1); xneighbour++){
+
+					float neighbour = IterationsUpscaled[getSample(xneighbour, yneighbour)];
+
+					if((value < 0) != (neighbour < 0) || Math.abs((int) value - (int) neighbour) > treshold){
+						return true;
+					}
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Sets how many iterations neighbouring pixels may be apart before they get all their samples, 0 gives
+	 * every pixel on the edge of a band all its samples
+	 */
+	public void setTreshold(int t) throws IllegalArgumentException{
+
+		if(t >= 0){
+			treshold = t;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + t);
+		}
+	}
+
+	/**
+	 * Returns how many iterations neighbouring pixels may be apart before they get all their samples
+	 */
+	public int getTreshold(){
+		return treshold;
+	}
+
+	/**
+	 * Returns how many samples were calculated during the last frame, the rest were filled
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels.sum();
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
@@ -12,59 +12,86 @@ import com.amd.aparapi.Kernel;
 
 public class AntialiasingKernel extends Kernel{
 
-	private int [] MandelbrotAntialiased, MandelbrotUpscaled;
+	//one packed RGB int per pixel, the same layout as a TYPE_INT_RGB BufferedImage so it can draw from it directly
+	private int [] MandelbrotAntialiased;
+	private float [] IterationsUpscaled;
 	private int width, height;
 	private int upscalingwidth, upscalingheight, samplesperpixel;
 	
+	//the part of the picture that is colored, the whole picture unless only a part of it has changed
+	private int regionleft, regiontop, regionwidth;
+	
+	//the colors of the iterations from Palette, 3 ints per iteration
+	private int [] Colors;
+	private int palettesize, paletteoffset;
+	private boolean smoothcoloring;
+	
 	public AntialiasingKernel(int w, int h){
 		
 		width = w;
 		height = h;
 				
 		setAntialiasing(1);
-		MandelbrotAntialiased = new int[width * height * 3];
+		setRegion(0, 0, width);
+		MandelbrotAntialiased = new int[width * height];
+		Colors = new int[3];
+		palettesize = 1;
 	}
 	
 	/*
 	 * We paralell compute the antialiasing in the GPU by having one tread on each chunk.
 	 * This function takes the upscaled mandelbrot image, and downscales it and applies antialiasing.
-	 * It will take pixels in chunks with size on the value of samplesperpixel and then take
-	 * the average of the colors and apply it to a pixel. Eg if the samples per pixel is 16 and 
+	 * It will take pixels in chunks with size on the value of samplesperpixel, look up the color of their
+	 * iterations in the palette and then take the average of the colors and apply it to a pixel. Eg if the samples per pixel is 16 and 
 	 * the first chunk of 4x4 pixels in the upscaled image has the average color C, 
 	 * then the pixel 0,0 in the antialiased picture will have the color C
 	 */
 	@Override public void run(){
 		   
-	      int ping = getGlobalId();
+	      int ping = (regiontop + getGlobalId() / regionwidth) * width + regionleft + getGlobalId() % regionwidth;
 
 	      int ypixel = (ping / width) * upscalingheight ;
 	      int xpixel = (ping * upscalingwidth)%(width * upscalingwidth);
 
-	      int z1, z2;
-	      float tempred = 0, tempgreen = 0, tempblue = 0;
+	      int z1, z2, color, nextcolor;
+	      float tempred = 0, tempgreen = 0, tempblue = 0, fraction;
 
 	      //calculates the chunks
 	      for(int ychunk = 0; ychunk < upscalingheight; ychunk++){
 	    	  for(int xchunk = 0; xchunk < upscalingwidth; xchunk++){
 
-	    		  z1 = 3 * (ypixel * width * upscalingwidth + xpixel) + 3 * (ychunk * width * upscalingwidth + xchunk);
-
-	    		  if(z1 + 2 < MandelbrotUpscaled.length){
-	    			  //stores the average colors of the chunks
-	    			  tempred += (float) MandelbrotUpscaled[z1]/(samplesperpixel);
-	    			  tempgreen += (float) MandelbrotUpscaled[z1 + 1]/(samplesperpixel);
-	    			  tempblue += (float) MandelbrotUpscaled[z1 + 2]/(samplesperpixel);
+	    		  z1 = (ypixel * width * upscalingwidth + xpixel) + (ychunk * width * upscalingwidth + xchunk);
+
+	    		  //pixels that never escaped are black
+	    		  if(z1 < IterationsUpscaled.length && IterationsUpscaled[z1] >= 0){
+	    			  
+	    			  color = 3 * (((int) IterationsUpscaled[z1] + paletteoffset) % palettesize);
+	    			  
+	    			  //the color between this iteration and the next one
+	    			  if(smoothcoloring){
+	    				  fraction = IterationsUpscaled[z1] - (int) IterationsUpscaled[z1];
+	    				  nextcolor = color + 3;
+	    				  
+	    				  tempred += ((1 - fraction) * Colors[color] + fraction * Colors[nextcolor])/(samplesperpixel);
+	    				  tempgreen += ((1 - fraction) * Colors[color + 1] + fraction * Colors[nextcolor + 1])/(samplesperpixel);
+	    				  tempblue += ((1 - fraction) * Colors[color + 2] + fraction * Colors[nextcolor + 2])/(samplesperpixel);
+	    			  }
+	    			  
+	    			  else{
+	    				  //stores the average colors of the chunks
+	    				  tempred += (float) Colors[color]/(samplesperpixel);
+	    				  tempgreen += (float) Colors[color + 1]/(samplesperpixel);
+	    				  tempblue += (float) Colors[color + 2]/(samplesperpixel);
+	    			  }
 	    		  }
 	    	  }
 	      }
 
 	      //Takes the average of the colors and applies it to the downscaled pixel
 
-	      z2 = 3 * ping;
+	      z2 = ping;
 
-	      MandelbrotAntialiased[z2] = (int) tempred;
-	      MandelbrotAntialiased[z2 + 1] = (int) tempgreen;
-	      MandelbrotAntialiased[z2 + 2] = (int) tempblue;
+	      MandelbrotAntialiased[z2] = ((int) tempred << 16) | ((int) tempgreen << 8) | (int) tempblue;
 
 
 	   }
@@ -103,10 +130,37 @@ public class AntialiasingKernel extends Kernel{
 	}
 	
 	/**
-	 * Updates the location of the array with the upscaled mandelbrot set
+	 * Sets the part of the picture that is colored, which starts at left and top and is w pixels wide.
+	 * The kernel must then be executed once for every pixel in the part
+	 */
+	public void setRegion(int left, int top, int w){
+		regionleft = left;
+		regiontop = top;
+		regionwidth = w;
+	}
+	
+	/**
+	 * Updates the location of the array with the iterations of the upscaled mandelbrot set
+	 */
+	public void setSource(float [] iu){
+		IterationsUpscaled = iu;
+	}
+	
+	/**
+	 * Sets the colors the iterations are turned into
+	 */
+	public void setPalette(Palette palette){
+		Colors = palette.getColors();
+		palettesize = palette.getSize();
+		paletteoffset = palette.getOffset();
+		smoothcoloring = palette.getSmoothColoring();
+	}
+	
+	/**
+	 * Sets the array the antialiased picture is written to, it must have one int for every pixel
 	 */
-	public void setSource(int [] mu){
-		MandelbrotUpscaled = mu;
+	public void setTarget(int [] target){
+		MandelbrotAntialiased = target;
 	}
 	
 	/**
@@ -122,6 +176,7 @@ public class AntialiasingKernel extends Kernel{
 	public void changeSize(int w, int h){
 		this.width = w;
 		this.height = h;
-		MandelbrotAntialiased = new int[width * height * 3];
+		setRegion(0, 0, width);
+		MandelbrotAntialiased = new int[width * height];
 	}
 }
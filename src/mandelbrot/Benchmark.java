@@ -0,0 +1,247 @@
+package mandelbrot;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+
+/**
+ * Measures how fast the parts of a frame are, so a change to a kernel can be checked before and after. Every
+ * benchmark is run for every view, antialiasing, julia setting and execution mode, first a few times to let the JIT
+ * compile it and then the measured times. For each it prints the samples and iterations per second of the median
+ * run, and how much garbage collection and allocation the measured runs caused.
+ *
+ * The benchmarks are the iterations alone (GPUKernel or the CPU engine that replaces it), the antialiasing and
+ * coloring alone (AntialiasingKernel), and a whole frame with MandelbrotGenerator.calculate() followed by the copy
+ * of the picture MandelbrotCanvas does when it is painted.
+ */
+
+public class Benchmark {
+
+	/**
+	 * The parts of a frame that are measured
+	 */
+	public enum Part {
+		Iterate, Color, Frame
+	}
+
+	/**
+	 * The views that are measured, with their centers in the set. The deep zoom is at i, which has spirals at every depth
+	 */
+	public enum View {
+		Default("0", "0", 1),
+		SeahorseValley("-0.743643887037151", "0.131825904205330", 5000),
+		DeepZoom("0", "1", 1e20);
+
+		private final String x, y;
+		private final double magnification;
+
+		private View(String x, String y, double magnification){
+			this.x = x;
+			this.y = y;
+			this.magnification = magnification;
+		}
+	}
+
+	private static final int [] Antialiasing = {1, 4, 16};
+
+	private int width, height, warmups, runs;
+
+	public Benchmark(int w, int h, int warmups, int runs){
+		width = w;
+		height = h;
+		this.warmups = warmups;
+		this.runs = runs;
+	}
+
+	/**
+	 * Runs every benchmark, the picture size and the number of runs can be given on the command line
+	 */
+	public static void main(String [] args){
+
+		int w = args.length >= 2 ? Integer.parseInt(args[0]) : 320;
+		int h = args.length >= 2 ? Integer.parseInt(args[1]) : 240;
+		int runs = args.length >= 3 ? Integer.parseInt(args[2]) : 5;
+
+		new Benchmark(w, h, 2, runs).run();
+	}
+
+	/**
+	 * Runs every benchmark and prints a line for each
+	 */
+	public void run(){
+
+		System.out.printf("%-7s %-15s %3s %-5s %-4s %10s %12s %12s %6s %8s %10s%n", "part", "view", "aa", "julia", "mode",
+				"ms", "samples/s", "iter/s", "gcs", "gc ms", "alloc MB");
+
+		for(Part part : Part.values()){
+			for(View view : View.values()){
+				for(int aa : Antialiasing){
+					for(boolean julia : new boolean[] {false, true}){
+						for(boolean gpu : new boolean[] {false, true}){
+							measure(part, view, aa, julia, gpu);
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println("CPU* means the GPU was asked for but the kernels fell back to the CPU");
+	}
+
+	/**
+	 * Runs one benchmark and prints its line
+	 */
+	private void measure(Part part, View view, int aa, boolean julia, boolean gpu){
+
+		MandelbrotGenerator generator = new MandelbrotGenerator(width, height);
+		generator.setCurrentAntialiasing(aa);
+		generator.setMagnification(view.magnification);
+		//the y coordinate of MandelbrotGenerator is scaled by the picture ratio
+		generator.setCoordinates(new BigDecimal(view.x), new BigDecimal(view.y).multiply(BigDecimal.valueOf(width))
+				.divide(BigDecimal.valueOf(height), MathContext.DECIMAL128));
+		generator.setRenderJuliaSet(julia);
+		generator.setJuliaValues(-0.8, 0.156);
+		generator.enableGPU(gpu);
+
+		BufferedImage picture = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		generator.setOutput(((DataBufferInt) picture.getRaster().getDataBuffer()).getData());
+
+		AntialiasingKernel aakernel = new AntialiasingKernel(width, height);
+		Palette palette = new Palette();
+
+		//the colors are measured on iterations that were calculated once
+		if(part == Part.Color){
+			generator.calculateIterations();
+			aakernel.setAntialiasing(aa);
+			aakernel.setSource(generator.getIterationsUpscaled());
+			aakernel.setExecutionMode(gpu ? GPUKernel.EXECUTION_MODE.GPU : GPUKernel.EXECUTION_MODE.JTP);
+			palette.update(generator.getIterationLimit());
+			aakernel.setPalette(palette);
+		}
+
+		long [] Times = new long[runs];
+		long iterations = 0, collections = 0, collectiontime = 0, allocated = 0;
+
+		for(int i = -warmups; i < runs; i++){
+
+			long gcs = getCollections(), gctime = getCollectionTime(), bytes = getAllocatedBytes();
+			long starttime = System.nanoTime();
+
+			if(part == Part.Color){
+				aakernel.execute(width * height);
+			}
+
+			else{
+				//moving to the same view makes the generator calculate it again
+				generator.setCoordinates(generator.getXCenterExact(), generator.getYCenterExact());
+
+				if(part == Part.Iterate){
+					generator.calculateIterations();
+				}
+
+				else{
+					generator.calculate();
+
+					Graphics2D g = screen.createGraphics();
+					g.drawImage(picture, 0, 0, null);
+					g.dispose();
+				}
+			}
+
+			long time = System.nanoTime() - starttime;
+
+			if(i >= 0){
+				Times[i] = time;
+				collections += getCollections() - gcs;
+				collectiontime += getCollectionTime() - gctime;
+				allocated += getAllocatedBytes() - bytes;
+			}
+		}
+
+		if(part != Part.Color){
+			iterations = countIterations(generator.getIterationsUpscaled(), generator.getIterationLimit());
+		}
+
+		Arrays.sort(Times);
+		double seconds = Times[runs / 2] / 1e9;
+		long samples = (long) width * height * aa;
+
+		//a GPU that is missing or fails makes the kernels run on the CPU, the mode that was used is printed
+		boolean gpuused = part == Part.Color ? aakernel.getExecutionMode() == GPUKernel.EXECUTION_MODE.GPU : generator.GPUisenabled();
+
+		System.out.printf("%-7s %-15s %3d %-5s %-4s %10.2f %12.3e %12.3e %6d %8d %10.1f%n", part, view, aa, julia,
+				gpu ? (gpuused ? "GPU" : "CPU*") : "CPU", seconds * 1000, samples / seconds,
+				part == Part.Color ? 0.0 : iterations / seconds, collections, collectiontime, allocated / 1048576.0);
+
+		aakernel.dispose();
+	}
+
+	/**
+	 * Returns how many iterations the samples took, samples inside the set took every iteration
+	 */
+	private static long countIterations(float [] IterationsUpscaled, double limit){
+
+		long iterations = 0;
+
+		for(float i : IterationsUpscaled){
+			iterations += i < 0 ? (long) limit : (long) i;
+		}
+
+		return iterations;
+	}
+
+	/**
+	 * Returns how many garbage collections there have been
+	 */
+	private static long getCollections(){
+
+		long collections = 0;
+
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			collections += Math.max(0, gc.getCollectionCount());
+		}
+
+		return collections;
+	}
+
+	/**
+	 * Returns how many milliseconds garbage collection has taken
+	 */
+	private static long getCollectionTime(){
+
+		long time = 0;
+
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			time += Math.max(0, gc.getCollectionTime());
+		}
+
+		return time;
+	}
+
+	/**
+	 * Returns how many bytes the threads that are alive have allocated, or 0 if the JVM can not tell.
+	 * Threads that ended during a run are not counted
+	 */
+	private static long getAllocatedBytes(){
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if(!(threads instanceof com.sun.management.ThreadMXBean)){
+			return 0;
+		}
+
+		long bytes = 0;
+
+		for(long allocated : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())){
+			bytes += Math.max(0, allocated);
+		}
+
+		return bytes;
+	}
+}
@@ -0,0 +1,116 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Checks that the BoundaryTrace strategy gives exactly the same picture as BruteForce. Every view is rendered with
+ * both strategies at a few sizes, antialiasing rates and with and without smooth coloring, and the iterations of
+ * every sample are compared. The frames are calculated on the CPU so the check does not depend on the GPU.
+ *
+ * The views include julia sets that are connected and that are not, which BoundaryTrace can not trace and leaves
+ * to brute force.
+ *
+ * Usage: BoundaryTraceCheck, it exits with 1 if a picture differs
+ */
+
+public class BoundaryTraceCheck {
+
+	/**
+	 * The views that are compared, with their centers in the set and the julia values if it is a julia set
+	 */
+	public enum View {
+		Default("0", "0", 1, false, 0, 0),
+		SeahorseValley("-0.743643887037151", "0.131825904205330", 5000, false, 0, 0),
+		ElephantValley("0.282", "0.01", 200, false, 0, 0),
+		Minibrot("-1.7548776662", "0", 2000, false, 0, 0),
+		SeahorseZoom("-0.743643887037151", "0.131825904205330", 1e9, false, 0, 0),
+		JuliaDendrite("0", "0", 1.5, true, 0, 1),
+		JuliaDust("0", "0", 1.5, true, 0.35, 0.35);
+
+		private final String x, y;
+		private final double magnification, juliareal, juliaimaginary;
+		private final boolean julia;
+
+		private View(String x, String y, double magnification, boolean julia, double juliareal, double juliaimaginary){
+			this.x = x;
+			this.y = y;
+			this.magnification = magnification;
+			this.julia = julia;
+			this.juliareal = juliareal;
+			this.juliaimaginary = juliaimaginary;
+		}
+	}
+
+	private static final int [][] Sizes = {{160, 120}, {320, 240}};
+	private static final int [] Antialiasing = {1, 4};
+
+	/**
+	 * Runs the check from the command line
+	 */
+	public static void main(String [] args){
+
+		if(!new BoundaryTraceCheck().run()){
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Compares every case and prints a line for each. Returns false if a picture differs
+	 */
+	public boolean run(){
+
+		boolean passed = true;
+
+		for(View view : View.values()){
+			for(int [] Size : Sizes){
+				for(int aa : Antialiasing){
+					for(boolean smooth : new boolean[] {false, true}){
+
+						float [] Expected = render(view, Size[0], Size[1], aa, smooth, MandelbrotGenerator.RenderStrategy.BruteForce);
+						float [] Traced = render(view, Size[0], Size[1], aa, smooth, MandelbrotGenerator.RenderStrategy.BoundaryTrace);
+
+						int different = 0;
+
+						for(int i = 0; i < Expected.length; i++){
+							if(Float.compare(Expected[i], Traced[i]) != 0){
+								different++;
+							}
+						}
+
+						passed &= different == 0;
+
+						System.out.printf("%-16s %4dx%-4d aa%-2d smooth %-5s %s%n", view, Size[0], Size[1], aa, smooth,
+								different == 0 ? "ok" : "DIFFERENT in " + different + " of " + Expected.length + " samples");
+					}
+				}
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+
+		return passed;
+	}
+
+	/**
+	 * Renders one case with a strategy and returns the iterations of its samples
+	 */
+	private static float [] render(View view, int w, int h, int aa, boolean smooth, MandelbrotGenerator.RenderStrategy strategy){
+
+		MandelbrotGenerator generator = new MandelbrotGenerator(w, h);
+		generator.enableGPU(false);
+		generator.setCurrentAntialiasing(aa);
+		generator.setSmoothColoring(smooth);
+		generator.setMagnification(view.magnification);
+		generator.setRenderJuliaSet(view.julia);
+		generator.setJuliaValues(view.juliareal, view.juliaimaginary);
+		generator.setRenderStrategy(strategy);
+
+		//the y coordinate of MandelbrotGenerator is scaled by the picture ratio
+		generator.setCoordinates(new BigDecimal(view.x), new BigDecimal(view.y).multiply(BigDecimal.valueOf(w))
+				.divide(BigDecimal.valueOf(h), MathContext.DECIMAL128));
+
+		generator.calculateIterations();
+
+		return generator.getIterationsUpscaled().clone();
+	}
+}
@@ -0,0 +1,218 @@
+package mandelbrot;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders the upscaled picture by tracing the edges between the color bands and filling the bands without
+ * calculating them. A pixel is only calculated if a neighbour of it has a different color than another
+ * neighbour, so the calculations follow the edges of the bands. When no edge is left every pixel that was
+ * not calculated is inside a band and gets the color of the pixel to the left of it.
+ *
+ * Tracing starts from the border of the picture. Every band of the mandelbrot set goes around 0 (which is in the set),
+ * so a band that does not touch the border is found from the line between 0 and the right border. This does not hold
+ * for julia sets that are not connected, and the fill can not give the pixels their own fraction of smooth coloring,
+ * so MandelbrotGenerator renders those with brute force instead. BoundaryTraceCheck compares both pictures.
+ *
+ * The edges are traced in rounds, all pixels found in one round are calculated in paralell in the next one by the
+ * threads of TileRenderer, and the rounds stop when the frame is cancelled.
+ */
+
+public class BoundaryTraceRenderer {
+
+	//the state of a pixel, both can be set at the same time
+	private static final int CALCULATED = 1, QUEUED = 2;
+
+	//rounds with fewer pixels than this are scanned by one thread, longer rounds are split into parts of this size
+	private final int paralellround = 512, roundpart = 64;
+
+	private TileRenderer tiles;
+	private PixelKernel kernel;
+	private float [] IterationsUpscaled;
+	private AtomicIntegerArray State;
+	private int fullwidth, fullheight;
+
+	//the pixels to scan in this round and the pixels found for the next round
+	private int [] Queue, NextQueue;
+	private AtomicInteger nextqueuelength;
+
+	private LongAdder iteratedpixels;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public BoundaryTraceRenderer(){
+
+		State = new AtomicIntegerArray(0);
+		Queue = new int[0];
+		NextQueue = new int[0];
+		nextqueuelength = new AtomicInteger();
+		iteratedpixels = new LongAdder();
+	}
+
+	/**
+	 * Renders the whole upscaled picture into the array with the kernel. The kernel must already have its
+	 * settings for the frame and the array must be cleared. xzero and yzero is the position of 0 in the picture
+	 */
+	public void render(TileRenderer t, PixelKernel k, float [] iterationsupscaled, int w, int h, double xzero, double yzero){
+
+		long starttime = System.currentTimeMillis();
+
+		tiles = t;
+		kernel = k;
+		IterationsUpscaled = iterationsupscaled;
+		fullwidth = w;
+		fullheight = h;
+
+		//every pixel can only be queued once
+		if(State.length() != fullwidth * fullheight){
+			State = new AtomicIntegerArray(fullwidth * fullheight);
+			Queue = new int[fullwidth * fullheight];
+			NextQueue = new int[fullwidth * fullheight];
+		}
+		else{
+			for(int i = 0; i < State.length(); i++){
+				State.set(i, 0);
+			}
+		}
+
+		iteratedpixels.reset();
+		nextqueuelength.set(0);
+
+		for(int x = 0; x < fullwidth; x++){
+			add(x);
+			add((fullheight - 1) * fullwidth + x);
+		}
+
+		for(int y = 0; y < fullheight; y++){
+			add(y * fullwidth);
+			add(y * fullwidth + fullwidth - 1);
+		}
+
+		//the line from 0 to the right border crosses every band that is inside the picture
+		int yline = (int) Math.round(yzero);
+
+		if(yline >= 0 && yline < fullheight && xzero < fullwidth){
+			for(int x = (int) Math.max(0, Math.ceil(xzero)); x < fullwidth; x++){
+				add(yline * fullwidth + x);
+			}
+		}
+
+		while(nextqueuelength.get() > 0 && !tiles.isCancelled()){
+
+			int [] temp = Queue;
+			Queue = NextQueue;
+			NextQueue = temp;
+
+			int queuelength = nextqueuelength.getAndSet(0);
+
+			//the edges are thin, so most rounds are too short to be worth splitting between threads
+			if(queuelength < paralellround){
+				for(int i = 0; i < queuelength; i++){
+					scan(Queue[i]);
+				}
+			}
+			else{
+				tiles.forEach(queuelength, roundpart, i -> scan(Queue[i]));
+			}
+		}
+
+		//every pixel that was not calculated is inside a band, each row is filled from the left
+		tiles.forEach(fullheight, 1, y -> fill(y));
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Calculates a pixel and its neighbours, and queues the neighbours of every neighbour with another color
+	 */
+	private void scan(int p){
+
+		int x = p % fullwidth;
+		int y = p / fullwidth;
+
+		boolean hasleft = x > 0, hasright = x < fullwidth - 1, hasup = y > 0, hasdown = y < fullheight - 1;
+
+		load(p);
+
+		boolean left = hasleft && !sameColor(p, p - 1);
+		boolean right = hasright && !sameColor(p, p + 1);
+		boolean up = hasup && !sameColor(p, p - fullwidth);
+		boolean down = hasdown && !sameColor(p, p + fullwidth);
+
+		//the edge goes through this pixel, so it continues at one of the neighbours
+		if(left)add(p - 1);
+		if(right)add(p + 1);
+		if(up)add(p - fullwidth);
+		if(down)add(p + fullwidth);
+
+		if(hasup && hasleft && (left || up))add(p - fullwidth - 1);
+		if(hasup && hasright && (right || up))add(p - fullwidth + 1);
+		if(hasdown && hasleft && (left || down))add(p + fullwidth - 1);
+		if(hasdown && hasright && (right || down))add(p + fullwidth + 1);
+	}
+
+	/**
+	 * Calculates a pixel if it has not already been calculated
+	 */
+	private void load(int p){
+
+		if((State.get(p) & CALCULATED) == 0){
+
+			kernel.calculatePixel(p % fullwidth, p / fullwidth);
+
+			//the color is written before the state so that other threads see it once they see the state
+			if((State.getAndUpdate(p, s -> s | CALCULATED) & CALCULATED) == 0){
+				iteratedpixels.increment();
+			}
+		}
+	}
+
+	/**
+	 * Adds a pixel to the next round if it has never been queued before
+	 */
+	private void add(int p){
+
+		if((State.getAndUpdate(p, s -> s | QUEUED) & QUEUED) == 0){
+			NextQueue[nextqueuelength.getAndIncrement()] = p;
+		}
+	}
+
+	/**
+	 * Returns true if both pixels escaped after as many whole iterations, the second pixel is calculated if needed
+	 */
+	private boolean sameColor(int p, int q){
+
+		load(q);
+
+		return (int) IterationsUpscaled[p] == (int) IterationsUpscaled[q];
+	}
+
+	/**
+	 * Gives every pixel in the row that was not calculated the color of the pixel to the left of it
+	 */
+	private void fill(int y){
+
+		for(int x = 1; x < fullwidth; x++){
+			int p = y * fullwidth + x;
+
+			if((State.get(p) & CALCULATED) == 0){
+				IterationsUpscaled[p] = IterationsUpscaled[p - 1];
+			}
+		}
+	}
+
+	/**
+	 * Returns how many pixels were calculated during the last frame, the rest were filled
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels.sum();
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
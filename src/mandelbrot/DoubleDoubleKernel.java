@@ -0,0 +1,216 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import com.amd.aparapi.Kernel;
+
+/**
+ * Calculates zooms that are a bit too deep for doubles with double-double numbers. A double-double is the sum of
+ * two doubles, hi + lo, where lo holds the rounding error of hi. This gives about 32 digits instead of 16.
+ *
+ * The additions and multiplications are made with error-free transforms, two-sum finds the rounding error of an
+ * addition and two-prod finds the rounding error of a multiplication with Math.fma. Since these can not be done
+ * with objects in a kernel every operation is written out in run().
+ *
+ * Each run() call calculates one upscaled pixel, just like GPUKernel. Aparapi can not convert Math.fma into OpenCL
+ * so this kernel always runs on the CPU (multithreaded).
+ */
+
+public class DoubleDoubleKernel extends Kernel implements PixelKernel{
+
+	private final int totaliterations = 50, escapetreshold = 4;
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
+	private double magnification, iterationceiling;
+	private float [] IterationsUpscaled;
+	private boolean renderjuliaset, smoothcoloring;
+	private double juliavaluereal, juliavalueimaginary;
+
+	//the top left corner of the picture and the distance between two samples, as hi and lo parts
+	private double xoriginhi, xoriginlo, yoriginhi, yoriginlo, xstephi, xsteplo, ystephi, ysteplo;
+
+	public DoubleDoubleKernel(int w, int h){
+
+		width = w;
+		height = h;
+		renderjuliaset = false;
+		imagedetail = 1;
+		magnification = 1;
+		upscalingwidth = 1;
+		upscalingheight = 1;
+
+		IterationsUpscaled = new float[width * height];
+
+		setExecutionMode(EXECUTION_MODE.JTP);
+	}
+
+	/**
+	 * Calculates one pixel with double-double precision
+	 */
+	@Override
+	public void run(){
+
+		int xpixel = getGlobalId()%(width * upscalingwidth);
+		int ypixel = getGlobalId()/(width * upscalingwidth);
+
+		calculatePixel(xpixel, ypixel);
+	}
+
+	/**
+	 * Calculates the color of one pixel in the upscaled picture
+	 */
+	public void calculatePixel(int xpixel, int ypixel){
+
+		int z = ypixel * width * upscalingwidth + xpixel;
+
+		double hi, lo, bv, err;
+
+		//xgrid = xorigin + xpixel * xstep, the product of an int and a double-double is done with two-prod
+		hi = xpixel * xstephi;
+		lo = Math.fma(xpixel, xstephi, -hi) + xpixel * xsteplo;
+		double xgridhi = xoriginhi + hi;
+		bv = xgridhi - xoriginhi;
+		err = (xoriginhi - (xgridhi - bv)) + (hi - bv) + xoriginlo + lo;
+		double xgridlo = err - ((xgridhi + err) - xgridhi);
+		xgridhi = xgridhi + err;
+
+		//ygrid = yorigin - ypixel * ystep
+		hi = -ypixel * ystephi;
+		lo = Math.fma(-ypixel, ystephi, -hi) - ypixel * ysteplo;
+		double ygridhi = yoriginhi + hi;
+		bv = ygridhi - yoriginhi;
+		err = (yoriginhi - (ygridhi - bv)) + (hi - bv) + yoriginlo + lo;
+		double ygridlo = err - ((ygridhi + err) - ygridhi);
+		ygridhi = ygridhi + err;
+
+		double zrealhi = xgridhi, zreallo = xgridlo, zimaghi = ygridhi, zimaglo = ygridlo;
+		double crealhi = xgridhi, creallo = xgridlo, cimaghi = ygridhi, cimaglo = ygridlo;
+
+		if(renderjuliaset){
+			crealhi = juliavaluereal;
+			creallo = 0;
+			cimaghi = juliavalueimaginary;
+			cimaglo = 0;
+		}
+
+		double realsquarehi, realsquarelo, imagsquarehi, imagsquarelo, producthi, productlo;
+
+		//cycle detection in the same way as in GPUKernel
+		double cycletolerance = 0.001 * (xstephi + xsteplo);
+		double zrealsavedhi = zrealhi, zrealsavedlo = zreallo, zimagsavedhi = zimaghi, zimagsavedlo = zimaglo;
+		int cyclelength = 0, cyclelimit = 1;
+
+		int currentiterations = 0;
+		boolean finished = false;
+
+		double newtreshold = getIterationLimit();
+
+		while(currentiterations <= newtreshold && finished == false){
+
+			if(zrealhi*zrealhi + zimaghi*zimaghi >= escapetreshold){
+
+				IterationsUpscaled[z] = currentiterations;
+
+				if(smoothcoloring){
+					IterationsUpscaled[z] = Palette.getSmoothIterations(currentiterations, zrealhi*zrealhi + zimaghi*zimaghi);
+				}
+
+				finished = true;
+			}
+
+			//two-prod of zreal * zreal, zimag * zimag and zreal * zimag
+			realsquarehi = zrealhi * zrealhi;
+			realsquarelo = Math.fma(zrealhi, zrealhi, -realsquarehi) + 2 * zrealhi * zreallo;
+			imagsquarehi = zimaghi * zimaghi;
+			imagsquarelo = Math.fma(zimaghi, zimaghi, -imagsquarehi) + 2 * zimaghi * zimaglo;
+			producthi = zrealhi * zimaghi;
+			productlo = Math.fma(zrealhi, zimaghi, -producthi) + zrealhi * zimaglo + zreallo * zimaghi;
+
+			//two-sum of zreal^2 - zimag^2
+			hi = realsquarehi - imagsquarehi;
+			bv = hi - realsquarehi;
+			lo = (realsquarehi - (hi - bv)) + (-imagsquarehi - bv) + realsquarelo - imagsquarelo;
+
+			//two-sum of that and creal
+			zrealhi = hi + crealhi;
+			bv = zrealhi - hi;
+			err = (hi - (zrealhi - bv)) + (crealhi - bv) + lo + creallo;
+			zreallo = err - ((zrealhi + err) - zrealhi);
+			zrealhi = zrealhi + err;
+
+			//two-sum of 2 * zreal * zimag and cimag, multiplying by 2 is exact
+			zimaghi = 2 * producthi + cimaghi;
+			bv = zimaghi - 2 * producthi;
+			err = (2 * producthi - (zimaghi - bv)) + (cimaghi - bv) + 2 * productlo + cimaglo;
+			zimaglo = err - ((zimaghi + err) - zimaghi);
+			zimaghi = zimaghi + err;
+
+			//the orbit has returned to the saved value so it is stuck in a cycle
+			if(abs((zrealhi - zrealsavedhi) + (zreallo - zrealsavedlo)) < cycletolerance
+					&& abs((zimaghi - zimagsavedhi) + (zimaglo - zimagsavedlo)) < cycletolerance)finished = true;
+
+			cyclelength++;
+
+			if(cyclelength == cyclelimit){
+				zrealsavedhi = zrealhi;
+				zrealsavedlo = zreallo;
+				zimagsavedhi = zimaghi;
+				zimagsavedlo = zimaglo;
+				cyclelength = 0;
+				cyclelimit = cyclelimit * 2;
+			}
+
+			currentiterations++;
+		}
+	}
+
+	/**
+	 * Returns the maximum number of iterations, this is the ceiling of GPUKernel or grows with the magnification in the same way
+	 */
+	public double getIterationLimit(){
+		return iterationceiling > 0 ? iterationceiling : totaliterations + max(1, 10 * imagedetail * log(magnification));
+	}
+
+	/**
+	 * Copies the size, view and color settings from the kernel that owns them
+	 */
+	public void syncSettings(GPUKernel settings){
+
+		width = settings.getWidth();
+		height = settings.getHeight();
+		upscalingwidth = settings.getUpscalingWidth();
+		upscalingheight = settings.getUpscalingHeight();
+		magnification = settings.getMagnification();
+		imagedetail = settings.getImageDetail();
+		iterationceiling = settings.getIterationCeiling();
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		IterationsUpscaled = settings.getIterationsUpscaled();
+	}
+
+	/**
+	 * Sets the center of the picture. The corner and the sample distance are converted in the same way
+	 * as in GPUKernel, but with BigDecimal so that they can be split into hi and lo parts
+	 */
+	public void setCoordinates(BigDecimal x, BigDecimal y){
+
+		MathContext mc = new MathContext(40);
+		BigDecimal inverse = BigDecimal.ONE.divide(new BigDecimal(magnification), mc);
+		BigDecimal ratio = BigDecimal.valueOf(height).divide(BigDecimal.valueOf(width), mc);
+
+		BigDecimal xorigin = x.subtract(inverse.multiply(BigDecimal.valueOf(2)), mc);
+		BigDecimal yorigin = ratio.multiply(y.add(inverse.multiply(BigDecimal.valueOf(2)), mc), mc);
+		BigDecimal xstep = inverse.multiply(BigDecimal.valueOf(4)).divide(BigDecimal.valueOf(width * upscalingwidth), mc);
+		BigDecimal ystep = ratio.multiply(inverse.multiply(BigDecimal.valueOf(4)), mc).divide(BigDecimal.valueOf(height * upscalingheight), mc);
+
+		xoriginhi = xorigin.doubleValue();
+		xoriginlo = xorigin.subtract(new BigDecimal(xoriginhi)).doubleValue();
+		yoriginhi = yorigin.doubleValue();
+		yoriginlo = yorigin.subtract(new BigDecimal(yoriginhi)).doubleValue();
+		xstephi = xstep.doubleValue();
+		xsteplo = xstep.subtract(new BigDecimal(xstephi)).doubleValue();
+		ystephi = ystep.doubleValue();
+		ysteplo = ystep.subtract(new BigDecimal(ystephi)).doubleValue();
+	}
+}
@@ -0,0 +1,269 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Renders an exponential map of a zoom: one strip of samples in polar coordinates around the point that is zoomed
+ * into, where the columns go once around the point and every row is a bit closer to it than the one above. The
+ * rows get closer to the point by the same factor each time, so every zoom by a factor of two adds the same
+ * number of rows, about columns * ln(2) / 2 pi of them. The samples are as far apart as the frames of the zoom
+ * need them at the edge of the frame, and closer than that nearer to the center.
+ *
+ * A frame of the zoom is then taken from the strip by looking up every sample of the frame at its angle and
+ * distance from the point, which is far cheaper than calculating it. The strip is calculated once with the
+ * iterations of its deepest row, and samples that escaped later than the iteration limit of a frame are inside
+ * the set in that frame, so the frames get the same colors as frames that were calculated.
+ *
+ * The samples are calculated by LaneRenderer with doubles, so the strip can only go as deep as doubles allow,
+ * and a strip with more samples than the maximum is not calculated, so large pictures can only map short zooms.
+ */
+
+public class ExponentialMapRenderer {
+
+	private final int totaliterations = 50;
+
+	//the most samples a strip may have, 4 bytes each
+	private final long maximumsamples = 32L << 20;
+
+	private float [] Strip;
+	private int columns, rows;
+	private double outerradius, innerradius, iterationlimit;
+	private boolean stored;
+
+	//the point in the set the strip is around, in the same coordinates as the center of MandelbrotGenerator
+	private BigDecimal xcenter, ycenter;
+
+	//the settings of the strip, frames can only be taken from it if they are calculated the same way
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
+	private boolean renderjuliaset, smoothcoloring;
+	private double juliavaluereal, juliavalueimaginary, iterationceiling;
+
+	//the column and the row of every sample of a picture centered on the point, with the rows counted from the sample
+	//that is one sample away from the point. Only the rows move when such a picture is zoomed
+	private int [] Columns;
+	private float [] Rows;
+
+	private long iteratedpixels;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public ExponentialMapRenderer(){
+		Strip = new float[0];
+		Columns = new int[0];
+		Rows = new float[0];
+		stored = false;
+	}
+
+	/**
+	 * Calculates the strip around x, y for the pictures of the kernel, from a picture at the outer magnification
+	 * to a picture at the inner magnification. Every sample of a picture at the outer magnification centered on
+	 * x, y is in the strip, and the last row is as close as the samples of a picture at the inner magnification.
+	 * Throws an IllegalArgumentException if the strip would have more samples than the maximum
+	 */
+	public void render(TileRenderer tiles, LaneRenderer lanes, GPUKernel settings, BigDecimal x, BigDecimal y,
+			double outermagnification, double innermagnification) throws IllegalArgumentException{
+
+		if(outermagnification <= 0 || innermagnification < outermagnification){
+			throw new IllegalArgumentException("Invalid magnifications: " + outermagnification + ", " + innermagnification);
+		}
+
+		long starttime = System.currentTimeMillis();
+
+		syncSettings(settings, x, y);
+
+		//the corners of the outermost picture are the farthest samples, and at the corners the strip has as many
+		//samples as the picture
+		outerradius = 2 / outermagnification * Math.hypot(1, (double) height / width);
+		innerradius = 4 / innermagnification / (width * Math.max(upscalingwidth, upscalingheight));
+		columns = (int) Math.ceil(Math.PI * Math.max(upscalingwidth, upscalingheight) * Math.hypot(width, height));
+		rows = (int) Math.ceil(columns / (2 * Math.PI) * Math.log(outerradius / innerradius)) + 1;
+
+		if((long) columns * rows > maximumsamples){
+			stored = false;
+			throw new IllegalArgumentException("Too many samples: " + columns + " x " + rows);
+		}
+
+		//a ceiling of the kernel is the limit of every picture, so the strip has it as well
+		iterationlimit = iterationceiling > 0 ? iterationceiling : totaliterations + Math.max(1, 10 * imagedetail * Math.log(innermagnification));
+
+		if(Strip.length != columns * rows){
+			Strip = new float[columns * rows];
+		}
+
+		Arrays.fill(Strip, -1);
+
+		//the y coordinate of the center is scaled by the picture ratio like in GPUKernel
+		lanes.syncPolar(settings, x.doubleValue(), y.doubleValue() * height / width, outerradius, columns, rows, iterationlimit, Strip);
+		tiles.render(lanes, columns, rows);
+
+		iteratedpixels = (long) columns * rows;
+		stored = true;
+
+		lookUpCentered();
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Returns true if the picture of the kernel centered on x, y can be taken from the strip: it is calculated the
+	 * same way, lies within the outermost picture and its samples are not closer than those of the innermost one
+	 */
+	public boolean covers(GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		if(!stored || settings.getWidth() != width || settings.getHeight() != height
+				|| settings.getUpscalingWidth() != upscalingwidth || settings.getUpscalingHeight() != upscalingheight
+				|| settings.getImageDetail() != imagedetail || settings.getRenderJuliaSet() != renderjuliaset
+				|| settings.getJuliaValueReal() != juliavaluereal || settings.getJuliaValueImaginary() != juliavalueimaginary
+				|| settings.getSmoothColoring() != smoothcoloring || settings.getIterationCeiling() != iterationceiling){
+			return false;
+		}
+
+		double magnification = settings.getMagnification();
+		double spacing = 4 / magnification / (width * Math.max(upscalingwidth, upscalingheight));
+
+		//how far the farthest corner of the picture is from the point the strip is around
+		double xoffset = Math.abs(x.subtract(xcenter).doubleValue()) + 2 / magnification;
+		double yoffset = Math.abs(y.subtract(ycenter).doubleValue()) * height / width + 2 / magnification * height / width;
+
+		return spacing >= innerradius * (1 - 1e-9) && Math.hypot(xoffset, yoffset) <= outerradius * (1 + 1e-9);
+	}
+
+	/**
+	 * Fills the upscaled picture of the kernel centered on x, y with the closest samples of the strip, a row per
+	 * thread of TileRenderer. The picture must be covered by the strip, a cancelled frame can leave it partly filled
+	 */
+	public void resample(TileRenderer tiles, GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		long starttime = System.currentTimeMillis();
+
+		int fullwidth = width * upscalingwidth, fullheight = height * upscalingheight;
+		double magnification = settings.getMagnification();
+		double xspacing = 4 / magnification / fullwidth;
+		double yspacing = 4 / magnification / (width * upscalingheight);
+		double limit = settings.getIterationLimit();
+
+		//the position of the center of the picture from the point the strip is around, y grows upwards in the set
+		double xshift = x.subtract(xcenter).doubleValue();
+		double yshift = y.subtract(ycenter).doubleValue() * height / width;
+
+		float [] IterationsUpscaled = settings.getIterationsUpscaled();
+		double rowsperlog = columns / (2 * Math.PI);
+
+		//a picture centered on the point only has to move the rows it looks up in
+		if(xshift == 0 && yshift == 0){
+
+			double firstrow = rowsperlog * Math.log(outerradius / xspacing);
+
+			tiles.forEach(fullheight, 1, ypixel -> {
+				for(int p = ypixel * fullwidth; p < (ypixel + 1) * fullwidth; p++){
+
+					int row = (int) Math.min(rows - 1, Math.max(0, Math.round(firstrow - Rows[p])));
+					float iterations = Strip[row * columns + Columns[p]];
+
+					IterationsUpscaled[p] = (int) iterations > limit ? -1 : iterations;
+				}
+			});
+
+			timetorender = (int) (System.currentTimeMillis() - starttime);
+			return;
+		}
+
+		tiles.forEach(fullheight, 1, ypixel -> {
+
+			double ygrid = yshift + yspacing * (fullheight / 2.0 - ypixel);
+
+			for(int xpixel = 0; xpixel < fullwidth; xpixel++){
+
+				double xgrid = xshift + xspacing * (xpixel - fullwidth / 2.0);
+
+				double radius = Math.hypot(xgrid, ygrid);
+				int row = (int) Math.min(rows - 1, Math.max(0, Math.round(rowsperlog * Math.log(outerradius / radius))));
+				int column = (int) Math.floorMod(Math.round(rowsperlog * Math.atan2(ygrid, xgrid)), (long) columns);
+
+				float iterations = Strip[row * columns + column];
+
+				//the strip has more iterations than the picture, what escaped after them is inside the set in the picture
+				IterationsUpscaled[ypixel * fullwidth + xpixel] = (int) iterations > limit ? -1 : iterations;
+			}
+		});
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Calculates the columns and rows of a picture centered on the point, in rows from the one a sample away
+	 */
+	private void lookUpCentered(){
+
+		int fullwidth = width * upscalingwidth, fullheight = height * upscalingheight;
+		double aspect = (double) upscalingwidth / upscalingheight;
+		double rowsperlog = columns / (2 * Math.PI);
+
+		if(Columns.length != fullwidth * fullheight){
+			Columns = new int[fullwidth * fullheight];
+			Rows = new float[fullwidth * fullheight];
+		}
+
+		for(int ypixel = 0; ypixel < fullheight; ypixel++){
+
+			//the distances are in samples across, which are aspect times the samples down
+			double ygrid = aspect * (fullheight / 2.0 - ypixel);
+
+			for(int xpixel = 0; xpixel < fullwidth; xpixel++){
+
+				double xgrid = xpixel - fullwidth / 2.0;
+
+				Columns[ypixel * fullwidth + xpixel] = (int) Math.floorMod(Math.round(rowsperlog * Math.atan2(ygrid, xgrid)), (long) columns);
+				Rows[ypixel * fullwidth + xpixel] = (float) (rowsperlog * Math.log(Math.hypot(xgrid, ygrid)));
+			}
+		}
+	}
+
+	/**
+	 * Copies the settings and the point of the strip
+	 */
+	private void syncSettings(GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		width = settings.getWidth();
+		height = settings.getHeight();
+		upscalingwidth = settings.getUpscalingWidth();
+		upscalingheight = settings.getUpscalingHeight();
+		imagedetail = settings.getImageDetail();
+		iterationceiling = settings.getIterationCeiling();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		smoothcoloring = settings.getSmoothColoring();
+		xcenter = x;
+		ycenter = y;
+	}
+
+	/**
+	 * Returns how many columns the strip has
+	 */
+	public int getColumns(){
+		return columns;
+	}
+
+	/**
+	 * Returns how many rows the strip has
+	 */
+	public int getRows(){
+		return rows;
+	}
+
+	/**
+	 * Returns how many samples were calculated for the strip
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels;
+	}
+
+	/**
+	 * Returns the time it took to calculate the strip or to take the last picture from it
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
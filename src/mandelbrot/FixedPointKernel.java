@@ -0,0 +1,375 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+import com.amd.aparapi.Kernel;
+
+/**
+ * Calculates the picture with 128 bit fixed-point integers instead of floating point numbers. Every number is
+ * stored in two longs, hi and lo, which together hold a two's complement integer that is 2^123 times larger than
+ * the number. This leaves 4 bits for the integer part, enough for every value that has not yet escaped.
+ *
+ * Integer math gives exactly the same result on every machine, which floating point does not promise between a
+ * GPU and a CPU. It also has about 37 digits, so it works for zooms far deeper than doubles.
+ *
+ * Each run() call calculates one upscaled pixel, just like GPUKernel. The numbers are kept in a small array of
+ * longs, where each number uses two places, since a pair of longs can not be returned from a function.
+ * Aparapi can not convert Math.multiplyHigh into OpenCL so this kernel always runs on the CPU (multithreaded).
+ */
+
+public class FixedPointKernel extends Kernel implements PixelKernel{
+
+	private static final int FRACTIONBITS = 123;
+
+	//2 and 4 as the hi part of a fixed-point number, their lo parts are 0
+	private static final long TWO = 2L << (FRACTIONBITS - 64), FOUR = 4L << (FRACTIONBITS - 64);
+
+	//the places of the numbers in the array of longs
+	private static final int ZREAL = 0, ZIMAG = 2, CREAL = 4, CIMAG = 6, REALSQUARE = 8, IMAGSQUARE = 10, PRODUCT = 12,
+			SAVEDREAL = 14, SAVEDIMAG = 16, DIFFERENCE = 18, SIZE = 20;
+
+	private final int totaliterations = 50;
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
+	private double magnification, iterationceiling;
+	private float [] IterationsUpscaled;
+	private boolean renderjuliaset, smoothcoloring;
+
+	//the top left corner of the picture, the distance between two samples and the julia values as fixed-point numbers
+	private long xoriginhi, xoriginlo, yoriginhi, yoriginlo, xstephi, xsteplo, ystephi, ysteplo;
+	private long juliarealhi, juliareallo, juliaimaghi, juliaimaglo, tolerancehi, tolerancelo;
+
+	public FixedPointKernel(int w, int h){
+
+		width = w;
+		height = h;
+		renderjuliaset = false;
+		imagedetail = 1;
+		magnification = 1;
+		upscalingwidth = 1;
+		upscalingheight = 1;
+
+		IterationsUpscaled = new float[width * height];
+
+		setExecutionMode(EXECUTION_MODE.JTP);
+	}
+
+	/**
+	 * Calculates one pixel with fixed-point numbers
+	 */
+	@Override
+	public void run(){
+
+		int xpixel = getGlobalId()%(width * upscalingwidth);
+		int ypixel = getGlobalId()/(width * upscalingwidth);
+
+		calculatePixel(xpixel, ypixel);
+	}
+
+	/**
+	 * Calculates the color of one pixel in the upscaled picture
+	 */
+	public void calculatePixel(int xpixel, int ypixel){
+
+		int z = ypixel * width * upscalingwidth + xpixel;
+
+		long [] n = new long[SIZE];
+
+		//xgrid = xorigin + xpixel * xstep and ygrid = yorigin - ypixel * ystep
+		n[CREAL] = xstephi;
+		n[CREAL + 1] = xsteplo;
+		multiplyByInteger(n, CREAL, xpixel, CREAL);
+		n[DIFFERENCE] = xoriginhi;
+		n[DIFFERENCE + 1] = xoriginlo;
+		add(n, DIFFERENCE, CREAL, CREAL);
+
+		n[CIMAG] = ystephi;
+		n[CIMAG + 1] = ysteplo;
+		multiplyByInteger(n, CIMAG, ypixel, CIMAG);
+		n[DIFFERENCE] = yoriginhi;
+		n[DIFFERENCE + 1] = yoriginlo;
+		subtract(n, DIFFERENCE, CIMAG, CIMAG);
+
+		n[ZREAL] = n[CREAL];
+		n[ZREAL + 1] = n[CREAL + 1];
+		n[ZIMAG] = n[CIMAG];
+		n[ZIMAG + 1] = n[CIMAG + 1];
+
+		if(renderjuliaset){
+			n[CREAL] = juliarealhi;
+			n[CREAL + 1] = juliareallo;
+			n[CIMAG] = juliaimaghi;
+			n[CIMAG + 1] = juliaimaglo;
+		}
+
+		//cycle detection in the same way as in GPUKernel
+		n[SAVEDREAL] = n[ZREAL];
+		n[SAVEDREAL + 1] = n[ZREAL + 1];
+		n[SAVEDIMAG] = n[ZIMAG];
+		n[SAVEDIMAG + 1] = n[ZIMAG + 1];
+		int cyclelength = 0, cyclelimit = 1;
+
+		int currentiterations = 0;
+		boolean finished = false;
+
+		double newtreshold = getIterationLimit();
+
+		while(currentiterations <= newtreshold && finished == false){
+
+			//if either part is 2 or more the value has escaped, otherwise both squares are small enough to add
+			boolean escaped = isTwoOrMore(n, ZREAL) || isTwoOrMore(n, ZIMAG);
+
+			if(!escaped){
+				multiply(n, ZREAL, ZREAL, REALSQUARE);
+				multiply(n, ZIMAG, ZIMAG, IMAGSQUARE);
+				add(n, REALSQUARE, IMAGSQUARE, DIFFERENCE);
+				escaped = n[DIFFERENCE] >= FOUR;
+			}
+
+			if(escaped){
+
+				IterationsUpscaled[z] = currentiterations;
+
+				//the fraction only changes the colors between two iterations, so the hi words are precise enough
+				if(smoothcoloring){
+					double zreal = n[ZREAL] * Math.scalb(1.0, 64 - FRACTIONBITS);
+					double zimag = n[ZIMAG] * Math.scalb(1.0, 64 - FRACTIONBITS);
+					IterationsUpscaled[z] = Palette.getSmoothIterations(currentiterations, zreal*zreal + zimag*zimag);
+				}
+
+				finished = true;
+			}
+
+			else{
+				multiply(n, ZREAL, ZIMAG, PRODUCT);
+
+				subtract(n, REALSQUARE, IMAGSQUARE, ZREAL);
+				add(n, ZREAL, CREAL, ZREAL);
+				add(n, PRODUCT, PRODUCT, ZIMAG);
+				add(n, ZIMAG, CIMAG, ZIMAG);
+
+				//the orbit has returned to the saved value so it is stuck in a cycle
+				subtract(n, ZREAL, SAVEDREAL, DIFFERENCE);
+				if(isSmallerThanTolerance(n, DIFFERENCE)){
+					subtract(n, ZIMAG, SAVEDIMAG, DIFFERENCE);
+					if(isSmallerThanTolerance(n, DIFFERENCE))finished = true;
+				}
+
+				cyclelength++;
+
+				if(cyclelength == cyclelimit){
+					n[SAVEDREAL] = n[ZREAL];
+					n[SAVEDREAL + 1] = n[ZREAL + 1];
+					n[SAVEDIMAG] = n[ZIMAG];
+					n[SAVEDIMAG + 1] = n[ZIMAG + 1];
+					cyclelength = 0;
+					cyclelimit = cyclelimit * 2;
+				}
+			}
+
+			currentiterations++;
+		}
+	}
+
+	/**
+	 * Adds the numbers at a and b and stores the sum at out
+	 */
+	private static void add(long [] n, int a, int b, int out){
+
+		long lo = n[a + 1] + n[b + 1];
+		long carry = Long.compareUnsigned(lo, n[a + 1]) < 0 ? 1 : 0;
+
+		n[out] = n[a] + n[b] + carry;
+		n[out + 1] = lo;
+	}
+
+	/**
+	 * Subtracts the number at b from the number at a and stores the difference at out
+	 */
+	private static void subtract(long [] n, int a, int b, int out){
+
+		long borrow = Long.compareUnsigned(n[a + 1], n[b + 1]) < 0 ? 1 : 0;
+
+		n[out] = n[a] - n[b] - borrow;
+		n[out + 1] = n[a + 1] - n[b + 1];
+	}
+
+	/**
+	 * Multiplies the number at a with a positive integer and stores the product at out
+	 */
+	private static void multiplyByInteger(long [] n, int a, int factor, int out){
+
+		long hi = n[a] * factor + unsignedMultiplyHigh(n[a + 1], factor);
+
+		n[out + 1] = n[a + 1] * factor;
+		n[out] = hi;
+	}
+
+	/**
+	 * Multiplies the numbers at a and b and stores the product at out. The sizes are multiplied as two 128 bit
+	 * unsigned integers, from the four 64 bit products only the bits above the 123 fraction bits are kept
+	 */
+	private static void multiply(long [] n, int a, int b, int out){
+
+		long ahi = n[a], alo = n[a + 1], bhi = n[b], blo = n[b + 1];
+		boolean negative = (ahi < 0) != (bhi < 0);
+
+		if(ahi < 0){
+			alo = -alo;
+			ahi = ~ahi + (alo == 0 ? 1 : 0);
+		}
+
+		if(bhi < 0){
+			blo = -blo;
+			bhi = ~bhi + (blo == 0 ? 1 : 0);
+		}
+
+		//bits 64 to 127 of the product, the lowest 64 bits are below the precision and only give carries
+		long low = unsignedMultiplyHigh(alo, blo);
+		long word1 = low + alo * bhi;
+		long carry = Long.compareUnsigned(word1, low) < 0 ? 1 : 0;
+		long sum = word1 + ahi * blo;
+		carry += Long.compareUnsigned(sum, word1) < 0 ? 1 : 0;
+		word1 = sum;
+
+		//bits 128 to 191
+		long middle = unsignedMultiplyHigh(alo, bhi);
+		long word2 = middle + unsignedMultiplyHigh(ahi, blo);
+		long carry2 = Long.compareUnsigned(word2, middle) < 0 ? 1 : 0;
+		sum = word2 + ahi * bhi;
+		carry2 += Long.compareUnsigned(sum, word2) < 0 ? 1 : 0;
+		word2 = sum + carry;
+		carry2 += Long.compareUnsigned(word2, sum) < 0 ? 1 : 0;
+
+		//bits 192 to 255
+		long word3 = unsignedMultiplyHigh(ahi, bhi) + carry2;
+
+		//shifts the product 123 bits to the right
+		long hi = (word3 << (128 - FRACTIONBITS)) | (word2 >>> (FRACTIONBITS - 64));
+		long lo = (word2 << (128 - FRACTIONBITS)) | (word1 >>> (FRACTIONBITS - 64));
+
+		if(negative){
+			lo = -lo;
+			hi = ~hi + (lo == 0 ? 1 : 0);
+		}
+
+		n[out] = hi;
+		n[out + 1] = lo;
+	}
+
+	/**
+	 * Returns the high 64 bits of the product of two unsigned longs
+	 */
+	private static long unsignedMultiplyHigh(long x, long y){
+		return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+	}
+
+	/**
+	 * Returns true if the size of the number at a is 2 or more
+	 */
+	private static boolean isTwoOrMore(long [] n, int a){
+
+		if(n[a] >= 0){
+			return n[a] >= TWO;
+		}
+
+		return ~n[a] + (n[a + 1] == 0 ? 1 : 0) >= TWO;
+	}
+
+	/**
+	 * Returns true if the size of the number at a is smaller than the cycle tolerance
+	 */
+	private boolean isSmallerThanTolerance(long [] n, int a){
+
+		long hi = n[a], lo = n[a + 1];
+
+		if(hi < 0){
+			lo = -lo;
+			hi = ~hi + (lo == 0 ? 1 : 0);
+		}
+
+		return hi < tolerancehi || (hi == tolerancehi && Long.compareUnsigned(lo, tolerancelo) < 0);
+	}
+
+	/**
+	 * Returns the maximum number of iterations, this is the ceiling of GPUKernel or grows with the magnification in the same way.
+	 * StrictMath is used so that the limit is the same on every machine
+	 */
+	public double getIterationLimit(){
+		return iterationceiling > 0 ? iterationceiling : totaliterations + Math.max(1, 10 * imagedetail * StrictMath.log(magnification));
+	}
+
+	/**
+	 * Copies the size, view and color settings from the kernel that owns them
+	 */
+	public void syncSettings(GPUKernel settings){
+
+		width = settings.getWidth();
+		height = settings.getHeight();
+		upscalingwidth = settings.getUpscalingWidth();
+		upscalingheight = settings.getUpscalingHeight();
+		magnification = settings.getMagnification();
+		imagedetail = settings.getImageDetail();
+		iterationceiling = settings.getIterationCeiling();
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		IterationsUpscaled = settings.getIterationsUpscaled();
+
+		juliarealhi = toFixedPoint(new BigDecimal(settings.getJuliaValueReal()), false);
+		juliareallo = toFixedPoint(new BigDecimal(settings.getJuliaValueReal()), true);
+		juliaimaghi = toFixedPoint(new BigDecimal(settings.getJuliaValueImaginary()), false);
+		juliaimaglo = toFixedPoint(new BigDecimal(settings.getJuliaValueImaginary()), true);
+	}
+
+	/**
+	 * Sets the center of the picture. The corner and the sample distance are converted in the same way
+	 * as in GPUKernel, but with BigDecimal so that they can be converted exactly to fixed-point
+	 */
+	public void setCoordinates(BigDecimal x, BigDecimal y){
+
+		MathContext mc = new MathContext(60);
+		BigDecimal inverse = BigDecimal.ONE.divide(new BigDecimal(magnification), mc);
+		BigDecimal ratio = BigDecimal.valueOf(height).divide(BigDecimal.valueOf(width), mc);
+
+		BigDecimal xorigin = x.subtract(inverse.multiply(BigDecimal.valueOf(2)), mc);
+		BigDecimal yorigin = ratio.multiply(y.add(inverse.multiply(BigDecimal.valueOf(2)), mc), mc);
+		BigDecimal xstep = inverse.multiply(BigDecimal.valueOf(4)).divide(BigDecimal.valueOf(width * upscalingwidth), mc);
+		BigDecimal ystep = ratio.multiply(inverse.multiply(BigDecimal.valueOf(4)), mc).divide(BigDecimal.valueOf(height * upscalingheight), mc);
+
+		//the tolerance is a thousandth of the sample distance, like in GPUKernel
+		BigDecimal tolerance = xstep.divide(BigDecimal.valueOf(1000), mc);
+
+		xoriginhi = toFixedPoint(xorigin, false);
+		xoriginlo = toFixedPoint(xorigin, true);
+		yoriginhi = toFixedPoint(yorigin, false);
+		yoriginlo = toFixedPoint(yorigin, true);
+		xstephi = toFixedPoint(xstep, false);
+		xsteplo = toFixedPoint(xstep, true);
+		ystephi = toFixedPoint(ystep, false);
+		ysteplo = toFixedPoint(ystep, true);
+		tolerancehi = toFixedPoint(tolerance, false);
+		tolerancelo = toFixedPoint(tolerance, true);
+	}
+
+	/**
+	 * Converts a number to fixed-point and returns its lo or hi part
+	 */
+	private static long toFixedPoint(BigDecimal d, boolean lo){
+
+		BigInteger fixedpoint = d.multiply(new BigDecimal(BigInteger.ONE.shiftLeft(FRACTIONBITS))).setScale(0, RoundingMode.FLOOR).toBigInteger();
+
+		if(lo){
+			return fixedpoint.longValue();
+		}
+
+		return fixedpoint.shiftRight(64).longValue();
+	}
+
+	/**
+	 * Returns the smallest distance between two samples that fixed-point numbers can still tell apart
+	 */
+	public static double getResolution(){
+		return Math.pow(2, -FRACTIONBITS);
+	}
+}
@@ -13,13 +13,21 @@ import com.amd.aparapi.Kernel;
  * Due to limitations in converting the code to openCL there are several restrictions in place for using objects or other classes
  */
 
-public class GPUKernel extends Kernel{
+public class GPUKernel extends Kernel implements PixelKernel{
 
 	private final int totaliterations = 50, escapetreshold = 4;
-	private int width, height, upscalingwidth, upscalingheight, imagedetail, redsensitivity, greensensitivity, bluesensitivity;
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
 	private double xcenter, ycenter, magnification;
-	private int [] MandelbrotUpscaled;
-	private boolean renderjuliaset;
+	
+	//the iteration limit that is used instead of the one from the image detail, 0 if there is none
+	private double iterationceiling;
+	
+	//the iterations of each pixel, -1 if it never escaped. Palette turns them into colors
+	private float [] IterationsUpscaled;
+	
+	//counts the pixels that were found inside the cardioid or the period-2 bulb during a frame
+	private int [] RejectedPixels;
+	private boolean renderjuliaset, smoothcoloring;
 	private double juliavaluereal, juliavalueimaginary;
 
 	public GPUKernel(int w, int h){
@@ -34,12 +42,11 @@ public class GPUKernel extends Kernel{
 		setMagnification(1);
 		setCoordinates(0, 0);
 		
-		redsensitivity = 1;
-		greensensitivity = 155;
-		bluesensitivity = 255;
+		smoothcoloring = false;
 
-		//Each pixel has 3 ints to store colors
-		MandelbrotUpscaled = new int[width * upscalingwidth * height * upscalingheight * 3];
+		//Each pixel has 1 float to store its iterations
+		IterationsUpscaled = new float[width * upscalingwidth * height * upscalingheight];
+		RejectedPixels = new int[1];
 	}
 
 	/**
@@ -60,9 +67,17 @@ public class GPUKernel extends Kernel{
 		int ypixel = getGlobalId()/(width * upscalingwidth);
 		
 		//getGlobalId() is almost like int i in a for loop
+		calculatePixel(xpixel, ypixel);
+	}
+	
+	/**
+	 * Calculates the color of one pixel in the upscaled picture. This is called once for every pixel by run(),
+	 * but the renderers in MandelbrotGenerator can also call it directly for the pixels they need
+	 */
+	public void calculatePixel(int xpixel, int ypixel){
 
 		//the relative position in the array
-		int z = 3 * (ypixel * width * upscalingwidth + xpixel);
+		int z = ypixel * width * upscalingwidth + xpixel;
 		
 		int currentiterations = 0;
 		double zreal, zimag, xgrid, ygrid, zrealtemp = 0, zimagtemp = 0;
@@ -78,9 +93,37 @@ public class GPUKernel extends Kernel{
 		zimag = ygrid;
 
 		boolean finished = false;
+		
+		/*
+		 * Points inside the main cardioid or the period-2 bulb never escape, so there is no need to iterate them.
+		 * Both tests are closed form, the cardioid is q*(q + x - 1/4) <= y^2/4 where q = (x - 1/4)^2 + y^2
+		 * and the bulb is the disc of radius 1/4 around -1. This does not hold for julia sets.
+		 */
+		if(!renderjuliaset){
+			double xshifted = xgrid - 0.25;
+			double q = xshifted*xshifted + ygrid*ygrid;
+			
+			if(q*(q + xshifted) <= 0.25*ygrid*ygrid || (xgrid + 1)*(xgrid + 1) + ygrid*ygrid <= 0.0625){
+				
+				IterationsUpscaled[z] = -1;
+				
+				atomicAdd(RejectedPixels, 0, 1);
+				finished = true;
+			}
+		}
 	
 		//image detail increases the more you zoom in
-		double newtreshold = (totaliterations + max(1, 10 * imagedetail * log(getMagnification())));
+		double newtreshold = getIterationLimit();
+		
+		/*
+		 * Orbits of interior points are pulled into a cycle. Brent's method saves the value of z at
+		 * iteration 1, 2, 4, 8 ... and if z comes back within cycletolerance of the saved value we
+		 * have found a cycle and the point will never escape. The tolerance is a small fraction of
+		 * the distance between two pixels so that slowly escaping points close to the set are not caught
+		 */
+		double cycletolerance = 0.001 * 4 * (1 / magnification) / (width * upscalingwidth);
+		double zrealsaved = zreal, zimagsaved = zimag;
+		int cyclelength = 0, cyclelimit = 1;
 		
 		//loops until it hits the a max number of iterations
 		while(currentiterations <= newtreshold && finished == false){
@@ -90,9 +133,13 @@ public class GPUKernel extends Kernel{
 			// if it does not escape we color it black
 			if(zreal*zreal + zimag*zimag >= escapetreshold){
 				
-					MandelbrotUpscaled[z] = (int) (redsensitivity * currentiterations/newtreshold);
-					MandelbrotUpscaled[z + 1] = (int) (greensensitivity * currentiterations/newtreshold);
-					MandelbrotUpscaled[z + 2] = (int) (bluesensitivity * currentiterations/newtreshold);	
+				IterationsUpscaled[z] = currentiterations;
+				
+				//the fraction of an iteration the value really needed to escape, the same as in Palette
+				if(smoothcoloring){
+					double fraction = 1 - log(0.5 * log(zreal*zreal + zimag*zimag) / log(2.0)) / log(2.0);
+					IterationsUpscaled[z] = (float) (currentiterations + min(0.99, max(0, fraction)));
+				}
 
 				finished = true;
 			}
@@ -117,18 +164,30 @@ public class GPUKernel extends Kernel{
 						bring them above zero, and they are trapped there forever
 			 */
 			if(zreal == 0 && zimag == 0)finished = true;
-
+			
+			//the orbit has returned to the saved value so it is stuck in a cycle
+			if(abs(zreal - zrealsaved) < cycletolerance && abs(zimag - zimagsaved) < cycletolerance)finished = true;
+			
+			cyclelength++;
+			
+			if(cyclelength == cyclelimit){
+				zrealsaved = zreal;
+				zimagsaved = zimag;
+				cyclelength = 0;
+				cyclelimit = cyclelimit * 2;
+			}
 
 			currentiterations++;
 		}
 	}
 
 	/**
-	 * Clears the picture to black color
+	 * Clears the picture to black color, every pixel is inside the set until it has been calculated
 	 */
 	public void erase(){
 
-		Arrays.fill(MandelbrotUpscaled, 0);
+		Arrays.fill(IterationsUpscaled, -1);
+		RejectedPixels[0] = 0;
 	}
 
 	/**
@@ -160,7 +219,7 @@ public class GPUKernel extends Kernel{
 			
 		} 
 
-		MandelbrotUpscaled = new int[width * upscalingwidth * height * upscalingheight * 3];
+		IterationsUpscaled = new float[width * upscalingwidth * height * upscalingheight];
 
 	}
 
@@ -206,10 +265,57 @@ public class GPUKernel extends Kernel{
 	}
 
 	/**
-	 * Returns the array where the calculated and non-antialiased mandelbrot set is stored
+	 * Returns the array where the iterations of the non-antialiased mandelbrot set are stored
 	 */
-	public int [] getMandelbrotUpscaled(){
-		return MandelbrotUpscaled;
+	public float [] getIterationsUpscaled(){
+		return IterationsUpscaled;
+	}
+	
+	/**
+	 * Returns the maximum number of iterations, which grows with the magnification unless a ceiling is set
+	 */
+	public double getIterationLimit(){
+		return iterationceiling > 0 ? iterationceiling : totaliterations + max(1, 10 * imagedetail * log(magnification));
+	}
+	
+	/**
+	 * Sets the maximum number of iterations instead of the one from the image detail, 0 goes back to the image detail
+	 */
+	public void setIterationCeiling(double ceiling) throws IllegalArgumentException{
+		if(ceiling >= 0){
+			iterationceiling = ceiling;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + ceiling);
+		}
+	}
+	
+	/**
+	 * Returns the maximum number of iterations that is used instead of the one from the image detail, 0 if there is none
+	 */
+	public double getIterationCeiling(){
+		return iterationceiling;
+	}
+	
+	/**
+	 * Sets whether the fraction of an iteration each value needed to escape is stored, it is used for smooth coloring
+	 */
+	public void setSmoothColoring(boolean b){
+		smoothcoloring = b;
+	}
+	
+	/**
+	 * Returns whether the fraction of an iteration each value needed to escape is stored
+	 */
+	public boolean getSmoothColoring(){
+		return smoothcoloring;
+	}
+
+	/**
+	 * Returns how many pixels of the last frame were inside the cardioid or the period-2 bulb and were not iterated
+	 */
+	public int getRejectedPixels(){
+		return RejectedPixels[0];
 	}
 
 	/**
@@ -254,13 +360,27 @@ public class GPUKernel extends Kernel{
 		return juliavalueimaginary;
 	}
 
+	/**
+	 * Returns the width of the picture
+	 */
+	public int getWidth(){
+		return width;
+	}
+	
+	/**
+	 * Returns the height of the picture
+	 */
+	public int getHeight(){
+		return height;
+	}
+
 	/**
 	 * Changes variables to adapt to a new screen resolution
 	 */
 	public void changeSize(int w, int h){
 		this.width = w;
 		this.height = h;
-		MandelbrotUpscaled = new int[width * upscalingwidth * height * upscalingheight * 3];
+		IterationsUpscaled = new float[width * upscalingwidth * height * upscalingheight];
 	}
 	
 	/**
@@ -296,79 +416,4 @@ public class GPUKernel extends Kernel{
 		return upscalingwidth;
 	}
 	
-	
-	/**
-	 * Sets the sensitivity of the colors. Must be between 1 and 16 
-	 */
-	public void setRGBsensitivity(int r, int b, int g){
-		
-		setRedSensitivity(r);
-		setBlueSensitivity(b);
-		setGreenSensitivity(g);
-	}
-	
-	/**
-	 * Sets the red color of the picture. Values must be from 0 to 255;
-	 */
-	public void setRedSensitivity(int r) throws IllegalArgumentException{
-		
-		if(r >= 0 && r <= 255){
-			redsensitivity = r;
-		}
-		else{
-			
-			throw new IllegalArgumentException("Invalid value: " + r);
-		}
-	}
-		
-	/**
-	 * Sets the green color of the picture. Values must be from 0 to 255;
-	 */
-	public void setGreenSensitivity(int g) throws IllegalArgumentException{
-		if(g >= 0 && g <= 255){
-			greensensitivity = g;
-		}
-		else{
-			
-			throw new IllegalArgumentException("Invalid value: " + g);
-		}
-	}
-	
-	/**
-   	 * Sets the blue color of the picture. Values must be from 0 to 255;
-	 */
-	public void setBlueSensitivity(int b) throws IllegalArgumentException{
-		if(b >= 0 && b <= 255){
-			bluesensitivity = b;
-		}
-		else{
-			
-			throw new IllegalArgumentException("Invalid value: " + b);
-		}
-		
-	}
-	
-	/**
-	 * Sets how much red the picture will have (values from 0 to 255)
-	 */
-	public int getRedSensitivity(){
-		return redsensitivity;
-	}
-	
-	/**
-	 * Sets how much green the picture will have (values from 0 to 255)
-	 */
-	public int getGreenSensitivity(){
-		return greensensitivity;
-	}
-	
-	/**
-	 * Sets how much blue the picture will have (values from 0 to 255)
-	 */
-	public int getBlueSensitivity(){
-		return bluesensitivity;
-	}
-	
 }
-
-
@@ -0,0 +1,291 @@
+package mandelbrot;
+import java.util.Arrays;
+
+/**
+ * Finds the iteration limit a view needs from a small picture of it, instead of the guess of the image detail.
+ * Every sample of the small picture is iterated until it escapes or is caught in a cycle like in GPUKernel, and the
+ * iterations the samples escaped after are counted in a histogram. The limit is the smallest one that fewer than the
+ * target fraction of the samples escape after, those samples are the pixels close to the set that are shown as inside it.
+ *
+ * The samples that are left are iterated again with four times the limit, for as long as the last limit let more
+ * than the target fraction of the samples escape. Samples that are left after the highest limit are mostly inside
+ * a minibrot whose cycle is slow to catch, so they do not count as escaping after the limit.
+ *
+ * The small picture is iterated with doubles, so views that are too deep for doubles to tell its samples apart are
+ * not probed and keep the limit of the image detail.
+ *
+ * The samples are iterated by the threads of TileRenderer one row at a time, and probing stops when the frame is
+ * cancelled. A view that only moved a bit from the last one that was probed, such as while panning, keeps its limit.
+ */
+
+public class IterationProbe {
+
+	private final int escapetreshold = 4, precisionmargin = 8;
+
+	//the width of the small picture in samples, its height follows the picture ratio
+	private final int probewidth = 64;
+
+	//the first and the highest limit the probe tries, and the lowest limit it gives so the colors still have a range to spread over
+	private final int firstlimit = 1 << 10, maximumlimit = 1 << 16, minimumlimit = 50;
+
+	//how far the center may move, in parts of the width of the view, before the view is probed again
+	private final double movetolerance = 0.125;
+
+	//how many samples escaped after every number of iterations
+	private int [] Histogram;
+
+	//the iterations every sample escaped after, or one of these
+	private int [] Escapes;
+	private static final int INSIDE = -1, UNRESOLVED = -2;
+
+	//the fraction of the samples that may escape after the limit
+	private double target;
+
+	private double limit;
+
+	//the view the limit was found for, so it is not probed again
+	private boolean stored;
+	private double xprobed, yprobed, magnificationprobed, juliarealprobed, juliaimaginaryprobed;
+	private int widthprobed, heightprobed, upscalingprobed;
+	private boolean juliaprobed;
+
+	//stores how long probing takes
+	private int timetorender;
+
+	public IterationProbe(){
+		Histogram = new int[maximumlimit + 1];
+		Escapes = new int[0];
+		target = 0.001;
+	}
+
+	/**
+	 * Returns the smallest iteration limit for the view of the kernel that leaves fewer than the target fraction of
+	 * the samples unresolved, or 0 if doubles are not precise enough to probe the view or the frame was cancelled.
+	 * The iteration ceiling of the kernel is not used
+	 */
+	public double findLimit(TileRenderer tiles, GPUKernel settings){
+
+		long starttime = System.currentTimeMillis();
+
+		if(covers(settings)){
+			timetorender = (int) (System.currentTimeMillis() - starttime);
+			return limit;
+		}
+
+		stored = false;
+
+		int width = settings.getWidth(), height = settings.getHeight();
+		int probeheight = Math.max(1, (int) Math.round((double) probewidth * height / width));
+		double magnification = settings.getMagnification();
+		double spacing = 4 * (1 / magnification) / probewidth;
+
+		if(spacing < precisionmargin * Math.ulp(Math.max(2, Math.max(Math.abs(settings.getXCenter()), Math.abs(settings.getYCenter()))))){
+			limit = 0;
+			timetorender = (int) (System.currentTimeMillis() - starttime);
+			return limit;
+		}
+
+		//the same conversion as in GPUKernel, with the samples in the middle of the pixels of the small picture
+		double ratio = (double) height / width;
+		double xorigin = settings.getXCenter() - 2 * (1 / magnification);
+		double yorigin = settings.getYCenter() + 2 * (1 / magnification);
+		double cycletolerance = 0.001 * 4 * (1 / magnification) / (width * settings.getUpscalingWidth());
+
+		if(Escapes.length != probewidth * probeheight){
+			Escapes = new int[probewidth * probeheight];
+		}
+
+		Arrays.fill(Escapes, UNRESOLVED);
+		Arrays.fill(Histogram, 0);
+
+		//the samples that may escape after the limit
+		int allowed = (int) (target * Escapes.length);
+		int escaped = 0, roundlimit = firstlimit;
+
+		while(true){
+
+			int currentlimit = roundlimit;
+
+			//a sample that escaped or was caught in a cycle does the same with a higher limit, so only the others are iterated again
+			tiles.forEach(Escapes.length, probewidth, i -> {
+				if(Escapes[i] == UNRESOLVED){
+					double xgrid = xorigin + 4 * (1 / magnification) * (i % probewidth + 0.5) / probewidth;
+					double ygrid = ratio * (yorigin - 4 * (1 / magnification) * (i / probewidth + 0.5) / probeheight);
+					Escapes[i] = iterate(settings, xgrid, ygrid, cycletolerance, currentlimit);
+				}
+			});
+
+			if(tiles.isCancelled()){
+				limit = 0;
+				timetorender = (int) (System.currentTimeMillis() - starttime);
+				return limit;
+			}
+
+			int previous = escaped;
+			escaped = 0;
+
+			for(int escape : Escapes){
+				if(escape >= 0){
+					escaped++;
+				}
+			}
+
+			//the escapes get fewer the higher the limit, so few escapes in the last round means few are left after it
+			if(roundlimit >= maximumlimit || (roundlimit > firstlimit && escaped - previous <= allowed)){
+				break;
+			}
+
+			roundlimit = Math.min(4 * roundlimit, maximumlimit);
+		}
+
+		for(int escape : Escapes){
+			if(escape >= 0){
+				Histogram[escape]++;
+			}
+		}
+
+		int late = 0;
+		int i = roundlimit;
+
+		while(i > minimumlimit && late + Histogram[i] <= allowed){
+			late += Histogram[i];
+			i--;
+		}
+
+		limit = i;
+		store(settings);
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+
+		return limit;
+	}
+
+	/**
+	 * Returns true if the limit of the last view that was probed can be kept for the view of the kernel: it is
+	 * calculated the same way at the same magnification, and its center only moved a bit
+	 */
+	private boolean covers(GPUKernel settings){
+
+		if(!stored || settings.getMagnification() != magnificationprobed || settings.getWidth() != widthprobed
+				|| settings.getHeight() != heightprobed || settings.getUpscalingWidth() != upscalingprobed
+				|| settings.getRenderJuliaSet() != juliaprobed || settings.getJuliaValueReal() != juliarealprobed
+				|| settings.getJuliaValueImaginary() != juliaimaginaryprobed){
+			return false;
+		}
+
+		double tolerance = movetolerance * 4 * (1 / magnificationprobed);
+
+		return Math.abs(settings.getXCenter() - xprobed) <= tolerance && Math.abs(settings.getYCenter() - yprobed) <= tolerance;
+	}
+
+	/**
+	 * Remembers the view of the kernel as the one the limit was found for
+	 */
+	private void store(GPUKernel settings){
+
+		xprobed = settings.getXCenter();
+		yprobed = settings.getYCenter();
+		magnificationprobed = settings.getMagnification();
+		widthprobed = settings.getWidth();
+		heightprobed = settings.getHeight();
+		upscalingprobed = settings.getUpscalingWidth();
+		juliaprobed = settings.getRenderJuliaSet();
+		juliarealprobed = settings.getJuliaValueReal();
+		juliaimaginaryprobed = settings.getJuliaValueImaginary();
+		stored = true;
+	}
+
+	/**
+	 * Returns the iterations one sample escaped after in the same way as in GPUKernel, INSIDE if it never will and
+	 * UNRESOLVED if it has not escaped by the limit
+	 */
+	private int iterate(GPUKernel settings, double xgrid, double ygrid, double cycletolerance, int limit){
+
+		boolean renderjuliaset = settings.getRenderJuliaSet();
+		double creal = renderjuliaset ? settings.getJuliaValueReal() : xgrid;
+		double cimag = renderjuliaset ? settings.getJuliaValueImaginary() : ygrid;
+
+		//the main cardioid and the period-2 bulb
+		if(!renderjuliaset){
+			double xshifted = xgrid - 0.25;
+			double q = xshifted*xshifted + ygrid*ygrid;
+
+			if(q*(q + xshifted) <= 0.25*ygrid*ygrid || (xgrid + 1)*(xgrid + 1) + ygrid*ygrid <= 0.0625){
+				return INSIDE;
+			}
+		}
+
+		double zreal = xgrid, zimag = ygrid, zrealtemp;
+		double zrealsaved = zreal, zimagsaved = zimag;
+		int cyclelength = 0, cyclelimit = 1;
+
+		for(int currentiterations = 0; currentiterations <= limit; currentiterations++){
+
+			if(zreal*zreal + zimag*zimag >= escapetreshold){
+				return currentiterations;
+			}
+
+			zrealtemp = zreal*zreal - zimag*zimag + creal;
+			zimag = 2*zreal*zimag + cimag;
+			zreal = zrealtemp;
+
+			if((zreal == 0 && zimag == 0) || (Math.abs(zreal - zrealsaved) < cycletolerance && Math.abs(zimag - zimagsaved) < cycletolerance)){
+				return INSIDE;
+			}
+
+			cyclelength++;
+
+			if(cyclelength == cyclelimit){
+				zrealsaved = zreal;
+				zimagsaved = zimag;
+				cyclelength = 0;
+				cyclelimit = cyclelimit * 2;
+			}
+		}
+
+		return UNRESOLVED;
+	}
+
+	/**
+	 * Sets the fraction of the samples that may escape after the limit and be shown as inside the set, lower values
+	 * give higher limits
+	 */
+	public void setTarget(double t) throws IllegalArgumentException{
+
+		if(t > 0 && t < 1){
+			stored &= t == target;
+			target = t;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + t);
+		}
+	}
+
+	/**
+	 * Returns the fraction of the samples that may escape after the limit
+	 */
+	public double getTarget(){
+		return target;
+	}
+
+	/**
+	 * Returns the limit that was found last, 0 if the view could not be probed
+	 */
+	public double getLimit(){
+		return limit;
+	}
+
+	/**
+	 * Returns how many samples escaped after every number of iterations during the last probe
+	 */
+	public int [] getHistogram(){
+		return Histogram.clone();
+	}
+
+	/**
+	 * Returns the time it took to probe the last view
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
@@ -0,0 +1,34 @@
+package mandelbrot;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One execution of an Aparapi kernel. The first execution of a kernel includes the time Aparapi took to convert
+ * it to OpenCL, which is kept apart so it can be told from the time of the kernel itself
+ */
+
+@Name("mandelbrot.KernelLaunch")
+@Label("Kernel Launch")
+@Description("An execution of an Aparapi kernel of the Mandelbrot generator")
+public class KernelLaunchEvent extends RenderEvent {
+
+	@Label("Kernel")
+	private String kernel;
+
+	@Label("Conversion Time")
+	@Timespan(Timespan.MILLISECONDS)
+	private long conversiontime;
+
+	public KernelLaunchEvent(String kernel){
+		this.kernel = kernel;
+	}
+
+	/**
+	 * Sets how many milliseconds Aparapi spent converting the kernel to OpenCL during the launch
+	 */
+	public void setConversionTime(long milliseconds){
+		conversiontime = milliseconds;
+	}
+}
@@ -0,0 +1,253 @@
+package mandelbrot;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calculates the upscaled picture on the CPU with doubles, a block of neighbouring pixels of a row at a time.
+ * The pixels of a block are stored in lanes, one array element per pixel, and every iteration runs the same
+ * loop over all lanes. A lane that escapes or is caught in a cycle only records its end and keeps iterating,
+ * so the loop has no branches that depend on a lane. The lanes do not depend on each other, so the CPU can
+ * work on the multiplications of several of them at once instead of waiting for one pixel after the other.
+ *
+ * The block is finished when no lane is running or the iteration limit is reached.
+ * The calculations are made in the same order as in GPUKernel so both give exactly the same picture.
+ * The tiles are handed out to the threads by TileRenderer.
+ */
+
+public class LaneRenderer implements PixelKernel{
+
+	//pixels that are calculated together, enough independent lanes to keep the floating point units busy
+	private static final int LANES = 8;
+
+	//the end of a lane that has not escaped yet and of a lane that never will, a lane that escaped has its iteration
+	private static final int RUNNING = -1, INSIDE = -2;
+
+	private final int escapetreshold = 4;
+
+	private int fullwidth, fullheight;
+	private double xorigin, yorigin, xstep, ratio, newtreshold, cycletolerance;
+	private boolean renderjuliaset, smoothcoloring;
+	private double juliavaluereal, juliavalueimaginary;
+	private float [] IterationsUpscaled;
+
+	//the columns are angles and the rows are distances from the origin, see syncPolar()
+	private boolean polar;
+
+	private LongAdder rejectedpixels;
+
+	//the lanes of the block a thread calculates, they are kept so a row or a single pixel does not allocate them
+	private static final ThreadLocal<Lanes> Scratch = ThreadLocal.withInitial(Lanes::new);
+
+	/**
+	 * The values of every lane of a block
+	 */
+	private static class Lanes {
+		private final double [] Zreal = new double[LANES], Zimag = new double[LANES], Creal = new double[LANES], Cimag = new double[LANES];
+		private final double [] Zrealsaved = new double[LANES], Zimagsaved = new double[LANES], Radius = new double[LANES];
+		private final int [] End = new int[LANES];
+	}
+
+	public LaneRenderer(){
+		rejectedpixels = new LongAdder();
+	}
+
+	/**
+	 * Copies the settings for the frame from the kernel that owns them, the pixels are stored in its array
+	 */
+	public void syncSettings(GPUKernel settings){
+
+		fullwidth = settings.getWidth() * settings.getUpscalingWidth();
+		fullheight = settings.getHeight() * settings.getUpscalingHeight();
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		IterationsUpscaled = settings.getIterationsUpscaled();
+
+		double magnification = settings.getMagnification();
+
+		//the parts of the conversion in GPUKernel that are the same for every pixel
+		double inverse = 1 / magnification;
+		xorigin = settings.getXCenter() - 2 * inverse;
+		yorigin = settings.getYCenter() + 2 * inverse;
+		xstep = (double) 4 * inverse;
+		ratio = (double) settings.getHeight() / settings.getWidth();
+
+		newtreshold = settings.getIterationLimit();
+		cycletolerance = 0.001 * 4 * inverse / fullwidth;
+		polar = false;
+
+		rejectedpixels.reset();
+	}
+
+	/**
+	 * Sets up a square tile of samples that is stored in its own array instead of the picture, with the julia values
+	 * and smooth coloring of the kernel. left and top is the position of the top left sample in the set, spacing is
+	 * the distance between two samples and limit is the number of iterations
+	 */
+	public void syncTile(GPUKernel settings, double left, double top, double spacing, int size, double limit, float [] tile){
+
+		fullwidth = size;
+		fullheight = size;
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		IterationsUpscaled = tile;
+
+		xorigin = left;
+		yorigin = top;
+		xstep = spacing * size;
+		ratio = 1;
+
+		newtreshold = limit;
+		cycletolerance = 0.001 * spacing;
+		polar = false;
+
+		rejectedpixels.reset();
+	}
+
+	/**
+	 * Sets up a strip of samples in polar coordinates around x, y that is stored in its own array, with the julia
+	 * values and smooth coloring of the kernel. Column x is at the angle 2 pi x / columns and row y is
+	 * radius * e^(-2 pi y / columns) away, so every sample is as far from its neighbours in both directions
+	 */
+	public void syncPolar(GPUKernel settings, double x, double y, double radius, int columns, int rows, double limit, float [] strip){
+
+		fullwidth = columns;
+		fullheight = rows;
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		IterationsUpscaled = strip;
+
+		xorigin = x;
+		yorigin = y;
+		xstep = radius;
+		ratio = 1;
+
+		newtreshold = limit;
+		polar = true;
+
+		rejectedpixels.reset();
+	}
+
+	/**
+	 * Calculates one pixel, the other lanes of its block are left empty
+	 */
+	public void calculatePixel(int xpixel, int ypixel){
+		calculateRow(xpixel, ypixel, 1, 1);
+	}
+
+	/**
+	 * Calculates the pixels of a row block by block, the pixels in a block are step pixels apart
+	 */
+	@Override
+	public void calculateRow(int left, int ypixel, int count, int step){
+
+		Lanes lanes = Scratch.get();
+		double [] Zreal = lanes.Zreal, Zimag = lanes.Zimag, Creal = lanes.Creal, Cimag = lanes.Cimag;
+		double [] Zrealsaved = lanes.Zrealsaved, Zimagsaved = lanes.Zimagsaved, Radius = lanes.Radius;
+		int [] End = lanes.End;
+
+		double ygrid = ratio * (yorigin - xstep * ypixel / fullheight);
+
+		//in a polar strip the distance from the origin and the distance between the samples depend on the row
+		double distance = xstep * Math.exp(-2 * Math.PI * ypixel / fullwidth);
+		double tolerance = polar ? 0.001 * distance * 2 * Math.PI / fullwidth : cycletolerance;
+
+		for(int start = 0; start < count; start += LANES){
+
+			for(int lane = 0; lane < LANES; lane++){
+
+				double xgrid = xorigin + xstep * (left + (start + lane) * step) / fullwidth;
+
+				if(polar){
+					double angle = 2 * Math.PI * (left + (start + lane) * step) / fullwidth;
+					xgrid = xorigin + distance * Math.cos(angle);
+					ygrid = yorigin + distance * Math.sin(angle);
+				}
+
+				Zreal[lane] = xgrid;
+				Zimag[lane] = ygrid;
+				Creal[lane] = renderjuliaset ? juliavaluereal : xgrid;
+				Cimag[lane] = renderjuliaset ? juliavalueimaginary : ygrid;
+				Zrealsaved[lane] = xgrid;
+				Zimagsaved[lane] = ygrid;
+				End[lane] = RUNNING;
+
+				if(start + lane >= count){
+					End[lane] = INSIDE;
+				}
+
+				else if(!renderjuliaset){
+					double xshifted = xgrid - 0.25;
+					double q = xshifted*xshifted + ygrid*ygrid;
+
+					if(q*(q + xshifted) <= 0.25*ygrid*ygrid || (xgrid + 1)*(xgrid + 1) + ygrid*ygrid <= 0.0625){
+						End[lane] = INSIDE;
+						rejectedpixels.increment();
+					}
+				}
+			}
+
+			int cyclelength = 0, cyclelimit = 1;
+			int running = LANES;
+
+			for(int currentiterations = 0; currentiterations <= newtreshold && running > 0; currentiterations++){
+
+				running = 0;
+
+				for(int lane = 0; lane < LANES; lane++){
+
+					double zreal = Zreal[lane], zimag = Zimag[lane];
+					int end = End[lane];
+
+					//the iteration the lane escaped at and its squared distance from 0 are kept
+					double radius = zreal*zreal + zimag*zimag;
+					Radius[lane] = end == RUNNING ? radius : Radius[lane];
+					end = end == RUNNING && radius >= escapetreshold ? currentiterations : end;
+
+					double zrealtemp = zreal*zreal - zimag*zimag + Creal[lane];
+					zimag = 2*zreal*zimag + Cimag[lane];
+					zreal = zrealtemp;
+
+					//lanes that are trapped at 0 or in a cycle will never escape and stay black
+					end = end == RUNNING && ((zreal == 0 && zimag == 0) || (Math.abs(zreal - Zrealsaved[lane]) < tolerance
+							&& Math.abs(zimag - Zimagsaved[lane]) < tolerance)) ? INSIDE : end;
+
+					Zreal[lane] = zreal;
+					Zimag[lane] = zimag;
+					End[lane] = end;
+					running += end == RUNNING ? 1 : 0;
+				}
+
+				//every lane started at the same time, so they share the schedule for saving the cycle values
+				cyclelength++;
+
+				if(cyclelength == cyclelimit){
+					System.arraycopy(Zreal, 0, Zrealsaved, 0, LANES);
+					System.arraycopy(Zimag, 0, Zimagsaved, 0, LANES);
+					cyclelength = 0;
+					cyclelimit = cyclelimit * 2;
+				}
+			}
+
+			for(int lane = 0; lane < LANES; lane++){
+				if(End[lane] >= 0){
+
+					int z = ypixel * fullwidth + left + (start + lane) * step;
+
+					IterationsUpscaled[z] = smoothcoloring ? Palette.getSmoothIterations(End[lane], Radius[lane]) : End[lane];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns how many pixels of the last frame were skipped because they are known to be inside the set
+	 */
+	public int getRejectedPixels(){
+		return rejectedpixels.intValue();
+	}
+}
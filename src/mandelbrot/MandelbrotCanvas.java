@@ -3,24 +3,25 @@ import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
 /**
- * This is a canvas object that is in charge of drawing on a frame. It has many functions related to MandelbrotGenerator
+ * This is a canvas object that is in charge of drawing on a frame. It has many functions related to MandelbrotGenerator.
+ * The generator belongs to a RenderService, so its frames are calculated without holding up the Event Dispatch Thread,
+ * and the generator should only be changed with render(Job)
  */
 class MandelbrotCanvas extends Canvas{
 
-	private BufferedImage Buffer;
-	private WritableRaster Raster;
-	private Graphics2D gt;
 	private MandelbrotGenerator generator;
+	private RenderService service;
+	private RenderMetrics metrics;
 	private Font systemFont;
-	private boolean overlay, rendernotification, savingnotification;
-	private int width, height, minAntialiasing, maxAntialiasing;
+	private boolean overlay;
+	private volatile boolean rendernotification, savingnotification;
+	private volatile int minAntialiasing, maxAntialiasing;
+	private int width, height;
 	
 	NumberFormat formatter;
 	
@@ -29,9 +30,11 @@ class MandelbrotCanvas extends Canvas{
 		this.height = height;
 		setBackground(Color.black);
 		systemFont = new Font("Arial", Font.BOLD ,12);
-		Buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		Raster = Buffer.getRaster();
 		generator = new MandelbrotGenerator(width, height);
+		
+		//the times of the frames can be watched over JMX, such as with jconsole
+		metrics = generator.getMetrics();
+		metrics.register("canvas");
 		formatter = new DecimalFormat("0.##E0");
 		
 		setMinAntialiasing(1);
@@ -44,50 +47,82 @@ class MandelbrotCanvas extends Canvas{
 		overlay = true;
 		rendernotification = false;
 		savingnotification = false;
+		
+		//the generator is only used by the render thread from here on, which repaints the canvas after every frame
+		service = new RenderService(generator);
+		service.setListener(this::repaint);
 	}
 
 	/**
-	 * Draws the screen. Uses double buffering.
+	 * Draws the screen. Uses double buffering, the overlay is drawn over the frame on the screen and never into
+	 * the pictures of the render thread
 	 */
 	public void paint(Graphics g){
 		
-		//this is the double buffer
-		gt = (Graphics2D) Buffer.getGraphics();
+		long starttime = System.nanoTime();
+		StageEvent paintevent = new StageEvent(RenderMetrics.Stage.Paint);
+		paintevent.begin();
+		
+		//this is the double buffer, the newest frame of the render thread
+		BufferedImage picture = service.getFrame();
+		RenderService.Settings settings = service.getSettings();
+		
+		long copytime = System.nanoTime();
+		StageEvent copyevent = new StageEvent(RenderMetrics.Stage.RasterCopy);
+		copyevent.begin();
+		
+		g.drawImage(picture, 0, 0, null);
+		
+		copyevent.end();
+		long copyendtime = System.nanoTime();
 		
 		if(hasOverlay()){
-			drawOverlay(gt);
+			drawOverlay(g);
 		}
 		
-		g.drawImage(Buffer, 0, 0, null);
+		paintevent.end();
+		long endtime = System.nanoTime();
+		
+		metrics.record(RenderMetrics.Stage.RasterCopy, copyendtime - copytime);
+		metrics.record(RenderMetrics.Stage.Paint, endtime - starttime);
 		
+		for(StageEvent event : new StageEvent[] {copyevent, paintevent}){
+			if(event.shouldCommit()){
+				event.setView(settings);
+				event.setWork((long) picture.getWidth() * picture.getHeight(), null, 0);
+				event.commit();
+			}
+		}
 	}
 	
 	/**
-	 * Draws the information overlay on the screen
+	 * Draws the information overlay on the screen, with the settings of the frame that was painted last
 	 */
 	public void drawOverlay(Graphics gt){
 		
+		RenderService.Settings settings = service.getSettings();
+		
 		gt.setFont(systemFont);
 		gt.setColor(Color.white);
 		
-		if(generator.getCurrentAntialiasing() > 1){
-			gt.drawString(generator.getCurrentAntialiasing() + "x FSAA" , 2, 12*1);
+		if(settings.getCurrentAntialiasing() > 1){
+			gt.drawString(settings.getCurrentAntialiasing() + (settings.adaptiveAntialiasingIsEnabled() ? "x adaptive AA" : "x FSAA") , 2, 12*1);
 		}
 		else{
 			gt.drawString("No Antialiasing", 2, 12*1);
 		}
 
-		gt.drawString("Time to render: " + Long.toString(generator.getTimetorender()) + "ms", 2, 12*2);
+		gt.drawString("Time to render: " + Long.toString(settings.getTimetorender()) + "ms", 2, 12*2);
 
-		if(generator.getTimetorender() != 0){
-			gt.drawString("FPS: " + (1000/generator.getTimetorender()), 2, 3 * 12);
+		if(settings.getTimetorender() != 0){
+			gt.drawString("FPS: " + (1000/settings.getTimetorender()), 2, 3 * 12);
 		}
 
-		gt.drawString(formatter.format(generator.getMagnification()) + " zoom ", 2, 4 * 12);
+		gt.drawString(formatter.format(settings.getMagnification()) + " zoom ", 2, 4 * 12);
 		
-		gt.drawString(generator.getXCenter() + ", " + generator.getYCenter() + "i", 2, 5 * 12);
+		gt.drawString(settings.getXCenter() + ", " + settings.getYCenter() + "i", 2, 5 * 12);
 			
-		if(generator.GPUisenabled()){
+		if(settings.GPUisenabled()){
 			gt.drawString("GPU accelerated", 2, 6 * 12);
 		}
 
@@ -105,12 +140,18 @@ class MandelbrotCanvas extends Canvas{
 	}
 	
 	/**
-	 * Calculates the mandelbrot set and draws it to the screen
+	 * Calculates the mandelbrot set on the render thread and draws it to the screen once it is done
 	 */
 	public void render(){
-		generator.calculate();
-		Raster.setPixels(0, 0, width, height, generator.getMandelbrot());
-		update(getGraphics());
+		service.submit(generator -> {});
+	}
+	
+	/**
+	 * Changes the generator on the render thread and draws the picture with the changes to the screen once it is done.
+	 * The frame that is being calculated is cancelled
+	 */
+	public void render(RenderService.Job change){
+		service.submit(change);
 	}
 
 	//We need to call paint from this function to be able to use double buffering
@@ -120,32 +161,50 @@ class MandelbrotCanvas extends Canvas{
 	}
 
 	/**
-	 * Zooms in on the picture to the given coordinates.
+	 * Zooms in on the picture to the given coordinates. The zoom is animated on the render thread, and jumps to its
+	 * end as soon as anything else is asked for
 	 */
 	public void zoomIn(int x, int y){
 
 		rendernotification = true;
 		update(getGraphics());
 		
-		double xtraveldistance = generator.convertXCoordinate(x) - generator.getXCenter();
-		double ytraveldistance = generator.convertYCoordinate(y) - generator.getYCenter();
-		//int limit = (int) (20 / Math.max(1, Math.log(m.getMagnification())));
-		int limit = (int) Math.max(1, (10 - Math.max(0, Math.log(generator.getMagnification() * generator.getImageDetail()))));
-		
-		generator.setCurrentAntialiasing(minAntialiasing);
-
-		for(int i = 0; i < limit; i++){
-			generator.setCoordinates(generator.getXCenter() + ((double)xtraveldistance /limit), generator.getYCenter() + ((double)ytraveldistance /limit));
-			generator.setMagnification(generator.getMagnification() * ((double)1 +((double)1/limit)));
+		service.submit(generator -> {
 			
-			if(i == limit -1){
-				rendernotification = false;
-				generator.setCurrentAntialiasing(maxAntialiasing);
-			}
+			//the distance is kept apart from the center so that it does not lose precision on deep zooms
+			double xtraveldistance = generator.convertXDistance(x);
+			double ytraveldistance = generator.convertYDistance(y);
+			//int limit = (int) (20 / Math.max(1, Math.log(m.getMagnification())));
+			int limit = (int) Math.max(1, (10 - Math.max(0, Math.log(generator.getMagnification() * generator.getImageDetail()))));
 			
-			render();
-		}
+			//adaptive antialiasing is cheap enough to keep during the zoom
+			generator.setCurrentAntialiasing(generator.adaptiveAntialiasingIsEnabled() ? maxAntialiasing : minAntialiasing);
+	
+			for(int i = 0; i < limit; i++){
+				generator.translate((double)xtraveldistance /limit, (double)ytraveldistance /limit);
+				generator.setMagnification(generator.getMagnification() * ((double)1 +((double)1/limit)));
+				
+				//the last frame is calculated by the service
+				if(i == limit -1){
+					rendernotification = false;
+					generator.setCurrentAntialiasing(maxAntialiasing);
+				}
+				
+				//the frames in between only calculate what the previous frame does not have, and are skipped once
+				//something else is asked for
+				else if(!service.isSuperseded()){
+					generator.calculateReprojected();
+					service.publish();
+				}
+			}
+		});
+	}
 
+	/**
+	 * Moves the picture with the mouse, dx and dy is how far the mouse moved. Only the part that comes into view is calculated
+	 */
+	public void pan(int dx, int dy){
+		service.pan(-dx, -dy);
 	}
 
 	/**
@@ -153,81 +212,85 @@ class MandelbrotCanvas extends Canvas{
 	 */
 	public void zoomOut(int x, int y) {
 		rendernotification = true;
-		drawOverlay(getGraphics());
 		update(getGraphics());
 		
-		generator.setMagnification(generator.getMagnification() * 0.2f);
-		rendernotification = false;
-		render();
+		service.submit(generator -> {
+			generator.setMagnification(generator.getMagnification() * 0.2f);
+			rendernotification = false;
+		});
 	}
 	
 	/**
-	 * A demo function showing some of the capabilities of the program
+	 * A demo function showing some of the capabilities of the program, it runs on the render thread
 	 */
 	public void demo(){
+		
+		service.submit(generator -> {
 			
-		//-0.1 0.651i
-		generator.setJuliaValues(-0.1f, 0.651f);
-		generator.setRenderJuliaSet(true);
-		generator.setCurrentAntialiasing(minAntialiasing);
+			//-0.1 0.651i
+			generator.setJuliaValues(-0.1f, 0.651f);
+			generator.setRenderJuliaSet(true);
+			generator.setCurrentAntialiasing(minAntialiasing);
 		
-		//double realconstant = (double) (Math.random()*5 * 0.002f);
-		//double imaginaryconstant = (double) (Math.random()* 5 * 0.002f);
+			//double realconstant = (double) (Math.random()*5 * 0.002f);
+			//double imaginaryconstant = (double) (Math.random()* 5 * 0.002f);
 		
-		int prevred = generator.getRedSensitivity();
-		int prevblue = generator.getBlueSensitivity();
-		int prevgreen = generator.getGreenSensitivity();
+			int prevred = generator.getRedSensitivity();
+			int prevblue = generator.getBlueSensitivity();
+			int prevgreen = generator.getGreenSensitivity();
 		
-		generator.setBlueSensitivity(100);
+			generator.setBlueSensitivity(100);
 		
-		int redval = 30, greenval = 0, blueval = 0;
+			int redval = 30, greenval = 0, blueval = 0;
 		
-		for(int i = 0; i < 150; i++){
+			//the demo stops as soon as something else is asked for
+			for(int i = 0; i < 150 && !service.isSuperseded(); i++){
 
-			/*
-			 if(generator.getJuliaValueReal() > 0.5f){
-				realconstant = -1 * Math.abs(realconstant);
-			}
-			else if(generator.getJuliaValueReal() < -0.0f){
-				realconstant = Math.abs(realconstant);
-			}
+				/*
+				 if(generator.getJuliaValueReal() > 0.5f){
+					realconstant = -1 * Math.abs(realconstant);
+				}
+				else if(generator.getJuliaValueReal() < -0.0f){
+					realconstant = Math.abs(realconstant);
+				}
 			
-			if(generator.getJuliaValueImaginary() > 1.0f){
-				imaginaryconstant = -1 * Math.abs(imaginaryconstant);
-			}
-			else if(generator.getJuliaValueImaginary() < 0.5f){
-				imaginaryconstant = Math.abs(imaginaryconstant);
-			}
-			*/
+				if(generator.getJuliaValueImaginary() > 1.0f){
+					imaginaryconstant = -1 * Math.abs(imaginaryconstant);
+				}
+				else if(generator.getJuliaValueImaginary() < 0.5f){
+					imaginaryconstant = Math.abs(imaginaryconstant);
+				}
+				*/
 			
-			generator.setJuliaValues(generator.getJuliaValueReal() + 0.001f, generator.getJuliaValueImaginary() + 0.001f);
+				generator.setJuliaValues(generator.getJuliaValueReal() + 0.001f, generator.getJuliaValueImaginary() + 0.001f);
 			
-			if(generator.getRedSensitivity() + redval > 255 || generator.getRedSensitivity() + redval < 0){
-				redval = -redval;
-			}
+				if(generator.getRedSensitivity() + redval > 255 || generator.getRedSensitivity() + redval < 0){
+					redval = -redval;
+				}
 			
-			if(generator.getGreenSensitivity() + greenval > 255 || generator.getGreenSensitivity() + greenval < 0){
-				greenval = -greenval;
-			}
+				if(generator.getGreenSensitivity() + greenval > 255 || generator.getGreenSensitivity() + greenval < 0){
+					greenval = -greenval;
+				}
 			
-			if(generator.getBlueSensitivity() + blueval > 255 || generator.getBlueSensitivity() + blueval < 0){
-				blueval = -blueval;
-			}
+				if(generator.getBlueSensitivity() + blueval > 255 || generator.getBlueSensitivity() + blueval < 0){
+					blueval = -blueval;
+				}
 			
-			generator.setRedSensitivity(generator.getRedSensitivity() + redval);
-			generator.setGreenSensitivity(generator.getGreenSensitivity() + greenval);
-			generator.setBlueSensitivity(generator.getBlueSensitivity() + blueval);
+				generator.setRedSensitivity(generator.getRedSensitivity() + redval);
+				generator.setGreenSensitivity(generator.getGreenSensitivity() + greenval);
+				generator.setBlueSensitivity(generator.getBlueSensitivity() + blueval);
 			
-			//System.out.println(generator.getJuliaValueReal() + ", " + generator.getJuliaValueImaginary());
-			render();
-		}
+				//System.out.println(generator.getJuliaValueReal() + ", " + generator.getJuliaValueImaginary());
+				generator.calculate();
+				service.publish();
+			}
 		
-		generator.setRedSensitivity(prevred);
-		generator.setBlueSensitivity(prevblue);
-		generator.setGreenSensitivity(prevgreen);
-		generator.setRenderJuliaSet(false);
-		generator.setCurrentAntialiasing(maxAntialiasing);
-		render();
+			generator.setRedSensitivity(prevred);
+			generator.setBlueSensitivity(prevblue);
+			generator.setGreenSensitivity(prevgreen);
+			generator.setRenderJuliaSet(false);
+			generator.setCurrentAntialiasing(maxAntialiasing);
+		});
 	}
 	
 	/**
@@ -237,9 +300,7 @@ class MandelbrotCanvas extends Canvas{
 	public void changeSize(int w, int h){
 		this.width = w;
 		this.height = h;
-		generator.changeSize(width, height);
-		Buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		Raster = Buffer.getRaster();
+		service.submit(generator -> generator.changeSize(w, h));
 	}
 	
 	/**
@@ -13,6 +13,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.text.DecimalFormat;
@@ -41,7 +42,7 @@ import javax.swing.KeyStroke;
  * A frame object for that uses MandelbrotCanvas
  */
 public class MandelbrotFrame extends JFrame implements MouseListener,
-		ActionListener {
+		MouseMotionListener, ActionListener {
 
 	protected MandelbrotCanvas canvas;
 	protected boolean fullscreen;
@@ -54,6 +55,8 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 			saveButton, settingsButton;
 	protected ImageIcon settingsIcon;
 	private File savedPicturesPath = new File("");
+	// where the mouse was when the picture was last moved by dragging
+	private int dragX, dragY;
 
 	public MandelbrotFrame(int width, int height) {
 		this(new Dimension(width, height));
@@ -85,6 +88,7 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 
 		canvas = new MandelbrotCanvas(width, height);
 		canvas.addMouseListener(this);
+		canvas.addMouseMotionListener(this);
 		if (!OSValidator.isMac()) {
 			// Layout does not work with Mac. Uses default BorderLayout on mac
 			// instead
@@ -229,9 +233,9 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 	}
 
 	@Override
-	public void mousePressed(MouseEvent arg0) {
-		// Required by MouseListener
-
+	public void mousePressed(MouseEvent me) {
+		dragX = me.getX();
+		dragY = me.getY();
 	}
 
 	@Override
@@ -240,6 +244,19 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 
 	}
 
+	@Override
+	public void mouseDragged(MouseEvent me) {
+		//pans the picture
+		canvas.pan(me.getX() - dragX, me.getY() - dragY);
+		dragX = me.getX();
+		dragY = me.getY();
+	}
+
+	@Override
+	public void mouseMoved(MouseEvent arg0) {
+		// Required by MouseMotionListener
+	}
+
 	/**
 	 * Sets the frame and all related objects to or from fullscreen
 	 */
@@ -351,11 +368,11 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 		private int width;
 		private int height;
 		private JPanel settingsPanel;
-		private JCheckBox informationOverlay, GPUcheckbox, useJuliaSet;
+		private JCheckBox informationOverlay, GPUcheckbox, useJuliaSet, smoothColoring, adaptiveAntialiasing, tileCache, autoDetail;
 		private JLabel antialiasingLabel, antialiasingDuringZoomLabel,
 				detailLevelLabel, redText, blueText, greenText, juliaRealValue, juliaImValue,
-				foregroundcolorLabel;
-		private JSlider antialiasing, antialiasingDuringZoom, detailLevel;
+				foregroundcolorLabel, threadsLabel;
+		private JSlider antialiasing, antialiasingDuringZoom, detailLevel, threads;
 		private JFormattedTextField redSetValue, blueSetValue, greenSetValue,
 				juliaSetImaginaryValue, juliaSetRealValue;
 		private JButton closeButton, refreshButton;
@@ -400,6 +417,12 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 			antialiasing.setPaintLabels(true);
 			antialiasing.setValue(canvas.getMaxAntialiasing());
 			settingsPanel.add(antialiasing);
+			adaptiveAntialiasing = new JCheckBox("Adaptive antialiasing");
+			adaptiveAntialiasing.setSelected(generator.adaptiveAntialiasingIsEnabled());
+			settingsPanel.add(adaptiveAntialiasing);
+			tileCache = new JCheckBox("Keep calculated tiles in memory");
+			tileCache.setSelected(generator.tileCacheIsEnabled());
+			settingsPanel.add(tileCache);
 
 			detailLevelLabel = new JLabel("Detail level");
 			settingsPanel.add(detailLevelLabel);
@@ -411,6 +434,9 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 			detailLevel.setPaintLabels(true);
 			detailLevel.setValue(generator.getImageDetail());
 			settingsPanel.add(detailLevel);
+			autoDetail = new JCheckBox("Automatic detail (from a small picture of the view)");
+			autoDetail.setSelected(generator.autoDetailIsEnabled());
+			settingsPanel.add(autoDetail);
 
 			foregroundcolorLabel = new JLabel("Set colors [0-255]");
 			settingsPanel.add(foregroundcolorLabel);
@@ -434,6 +460,9 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 			blueSetValue.setColumns(3);
 			colorPanel.add(blueSetValue);
 			settingsPanel.add(colorPanel);
+			smoothColoring = new JCheckBox("Smooth coloring");
+			smoothColoring.setSelected(generator.getSmoothColoring());
+			settingsPanel.add(smoothColoring);
 			
 			//To make sure that doubles show correctly
 			DecimalFormat decimalFormat = new DecimalFormat("#.######");
@@ -466,6 +495,19 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 			GPUcheckbox.setSelected(generator.GPUisenabled());
 			settingsPanel.add(GPUcheckbox);
 
+			// Threads used when the picture is not rendered on the GPU
+			threadsLabel = new JLabel("CPU threads");
+			settingsPanel.add(threadsLabel);
+			threads = new JSlider();
+			threads.setMinimum(1);
+			threads.setMaximum(TileRenderer.getAvailableProcessors());
+			threads.setPaintTicks(true);
+			threads.setMajorTickSpacing(1);
+			threads.setSnapToTicks(true);
+			threads.setPaintLabels(true);
+			threads.setValue(generator.getParallelism());
+			settingsPanel.add(threads);
+
 			JPanel settingsButtonPanel = new JPanel();
 			closeButton = new JButton("Refresh and close");
 			closeButton.addActionListener(this);
@@ -503,63 +545,91 @@ public class MandelbrotFrame extends JFrame implements MouseListener,
 				canvas.setMinAntialiasing(Math.max(1,
 						antialiasingDuringZoom.getValue()));
 				canvas.setMaxAntialiasing(Math.max(1, antialiasing.getValue()));
-				generator.setCurrentAntialiasing(Math.max(1,
-						antialiasing.getValue()));
 	
 				// We know these are Integers due to it being a FormattedTextField
 				Integer redValue = (Integer) redSetValue.getValue();
 				Integer blueValue = (Integer) blueSetValue.getValue();
 				Integer greenValue = (Integer) greenSetValue.getValue();
 	
-				generator.setImageDetail(detailLevel.getValue());
-	
-				//changes colors
-				if (redValue <= 255 && redValue >= 0) {
-					generator.setRedSensitivity(redValue);
-				} else {
+				//the colors outside of the range are not changed
+				if (redValue > 255 || redValue < 0) {
 					redSetValue.setValue(generator.getRedSensitivity());
 				}
-				if (blueValue <= 255 && blueValue >= 0) {
-					generator.setBlueSensitivity(blueValue);
-				} else {
+				if (blueValue > 255 || blueValue < 0) {
 					blueSetValue.setValue(generator.getBlueSensitivity());
 				}
-				if (greenValue <= 255 && greenValue >= 0) {
-					generator.setGreenSensitivity(greenValue);
-				} else {
+				if (greenValue > 255 || greenValue < 0) {
 					greenSetValue.setValue(generator.getGreenSensitivity());
 				}
 				
-				//settings for julia sets
-				generator.setRenderJuliaSet(useJuliaSet.isSelected());
-				if(generator.getRenderJuliaSet()) {
+				double juliaReal = 0, juliaImaginary = 0;
+				if(useJuliaSet.isSelected()) {
 					try{
-						generator.setJuliaValues((Double)juliaSetRealValue.getValue(), (Double)juliaSetImaginaryValue.getValue());
+						juliaReal = (Double)juliaSetRealValue.getValue();
+						juliaImaginary = (Double)juliaSetImaginaryValue.getValue();
 					}
 					catch(Exception e) {
 						System.err.println("Textfield returned wrong valuetype, trying to parse from string");
 						//Known bug in JFormattedTextField causes the field to return a long during certain conditions
-						generator.setJuliaValues(Double.valueOf(juliaSetRealValue.getValue().toString()), 
-								Double.valueOf(juliaSetImaginaryValue.getValue().toString()));
+						juliaReal = Double.valueOf(juliaSetRealValue.getValue().toString());
+						juliaImaginary = Double.valueOf(juliaSetImaginaryValue.getValue().toString());
 					}
 				}
-	
-				// Cannot call setCPUOnly with same value as it currently is
-				// Therefore the double check
-				if (!generator.GPUisenabled() && GPUcheckbox.isSelected()) {
-					generator.enableGPU(true);
-	
-					// detail is lowered to avoid GPU timeouts
-					if (generator.getImageDetail() > 1) {
-						generator.setImageDetail(1);
+				
+				// The values are read from the components here, the generator is changed on the render thread
+				int antialiasingValue = Math.max(1, antialiasing.getValue());
+				boolean adaptive = adaptiveAntialiasing.isSelected();
+				boolean cache = tileCache.isSelected();
+				int detail = detailLevel.getValue();
+				boolean auto = autoDetail.isSelected();
+				int threadCount = threads.getValue();
+				boolean smooth = smoothColoring.isSelected();
+				boolean julia = useJuliaSet.isSelected();
+				double real = juliaReal, imaginary = juliaImaginary;
+				boolean gpu = GPUcheckbox.isSelected();
+				
+				canvas.render(generator -> {
+					generator.setCurrentAntialiasing(antialiasingValue);
+					generator.enableAdaptiveAntialiasing(adaptive);
+					generator.enableTileCache(cache);
+					generator.setImageDetail(detail);
+					generator.enableAutoDetail(auto);
+					generator.setParallelism(threadCount);
+		
+					//changes colors
+					if (redValue <= 255 && redValue >= 0) {
+						generator.setRedSensitivity(redValue);
 					}
-	
-				} else if (generator.GPUisenabled() && !GPUcheckbox.isSelected()) {
-	
-					generator.enableGPU(false);
-				}
-	
-				canvas.render();
+					if (blueValue <= 255 && blueValue >= 0) {
+						generator.setBlueSensitivity(blueValue);
+					}
+					if (greenValue <= 255 && greenValue >= 0) {
+						generator.setGreenSensitivity(greenValue);
+					}
+					generator.setSmoothColoring(smooth);
+					
+					//settings for julia sets
+					generator.setRenderJuliaSet(julia);
+					if(generator.getRenderJuliaSet()) {
+						generator.setJuliaValues(real, imaginary);
+					}
+		
+					// Cannot call setCPUOnly with same value as it currently is
+					// Therefore the double check
+					if (!generator.GPUisenabled() && gpu) {
+						generator.enableGPU(true);
+		
+						// detail is lowered to avoid GPU timeouts
+						if (generator.getImageDetail() > 1) {
+							generator.setImageDetail(1);
+						}
+		
+					} else if (generator.GPUisenabled() && !gpu) {
+		
+						generator.enableGPU(false);
+					}
+				});
+				
 				if (event.getSource().equals(closeButton)) {
 					dispose();
 				}
@@ -1,5 +1,14 @@
 package mandelbrot;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.amd.aparapi.Kernel;
 import com.amd.aparapi.Range;
 
 /**
@@ -11,6 +20,31 @@ import com.amd.aparapi.Range;
 
 public class MandelbrotGenerator {
 
+	/**
+	 * The number types the picture can be calculated with, from the fastest to the most precise
+	 */
+	public enum Precision {
+		Standard,
+		DoubleDouble,
+		FixedPoint,
+		Perturbation;
+	}
+
+	/**
+	 * The ways the upscaled picture can be rendered. BruteForce executes the kernel once for every pixel,
+	 * Subdivision and BoundaryTrace only calculate the pixels they need on the CPU (see SubdivisionRenderer
+	 * and BoundaryTraceRenderer). Julia sets and smooth coloring are always rendered with BruteForce instead,
+	 * since filling the inside of the bands can not give them the same picture
+	 */
+	public enum RenderStrategy {
+		BruteForce,
+		Subdivision,
+		BoundaryTrace;
+	}
+
+	//how many times larger than the rounding error of a double the distance between two samples must be
+	private final int precisionmargin = 8;
+
 	//Width and height of screen
 	private int width, height;
 
@@ -23,6 +57,67 @@ public class MandelbrotGenerator {
 	private GPUKernel gkernel;
 	private AntialiasingKernel aakernel;
 	
+	//used instead of gkernel for zooms that are too deep for doubles
+	private DoubleDoubleKernel ddkernel;
+	private FixedPointKernel fkernel;
+	private PerturbationKernel pkernel;
+	private ReferenceOrbit orbit;
+	
+	//if true, fixed-point numbers are used whenever they are precise enough so every machine renders the same picture
+	private boolean fixedpointenabled;
+	
+	private RenderStrategy renderstrategy;
+	private SubdivisionRenderer subdivision;
+	private BoundaryTraceRenderer boundarytrace;
+	
+	//renders the kernels that do not run on the GPU, doubles are calculated by lanes instead of gkernel
+	private TileRenderer tiles;
+	private LaneRenderer lanes;
+	private boolean lanesused;
+	
+	//renders only the samples of the pixels on the edges of the bands
+	private AdaptiveRenderer adaptive;
+	private boolean adaptiveantialiasing;
+	
+	//moves the iterations of the previous frame into the view of the next one
+	private ReprojectionRenderer reprojection;
+	
+	//keeps the parts of the set that have been calculated, the tiles are calculated with their own number of iterations
+	private TileCache tilecache;
+	private QuadtreeRenderer quadtree;
+	private boolean tilecacheenabled;
+	
+	//frames of a zoom that are taken from an exponential map instead of being calculated
+	private ExponentialMapRenderer expmap;
+	private boolean exponentialmapenabled;
+	
+	//how many pixels were calculated during the last frame
+	private long iteratedpixels;
+	
+	//the times of the recent frames for JMX
+	private RenderMetrics metrics;
+	
+	//the kernels store iterations which the palette turns into colors, so the set is only calculated again when the view changes
+	private Palette palette;
+	private double iterationlimit;
+	private boolean recalculate;
+	
+	//finds the iteration limit of every frame from a small picture instead of the image detail
+	private IterationProbe probe;
+	private boolean autodetailenabled;
+	
+	//the colors of the whole picture are outdated, so they can not be moved when panning
+	private boolean recolor;
+	
+	//the array the picture was colored into before the output was changed, null if the output holds the picture
+	private int [] Previous;
+	
+	//the kernels launch() has executed, Aparapi only keeps the conversion time of a kernel once it has executed
+	private Set<Kernel> Launched;
+	
+	//the exact center of the picture, gkernel only has it rounded to doubles
+	private BigDecimal xcenter, ycenter;
+	
 	//stores the antialiasing rate
 	private int samplesperpixel;
 	
@@ -36,42 +131,558 @@ public class MandelbrotGenerator {
 		samplesperpixel = 1;
 		previousize = width * height;
 		GPUisfunctional = false;
+		fixedpointenabled = false;
 		GPUenabled = false;
 		
 		gkernel = new GPUKernel(width, height);
 		aakernel = new AntialiasingKernel(width, height);
-		aakernel.setSource(gkernel.getMandelbrotUpscaled());
+		aakernel.setSource(gkernel.getIterationsUpscaled());
+		
+		ddkernel = new DoubleDoubleKernel(width, height);
+		fkernel = new FixedPointKernel(width, height);
+		pkernel = new PerturbationKernel(width, height);
+		Launched = new HashSet<Kernel>();
+		orbit = new ReferenceOrbit();
+		
+		renderstrategy = RenderStrategy.BruteForce;
+		subdivision = new SubdivisionRenderer();
+		boundarytrace = new BoundaryTraceRenderer();
+		tiles = new TileRenderer();
+		lanes = new LaneRenderer();
+		adaptive = new AdaptiveRenderer();
+		adaptiveantialiasing = false;
+		reprojection = new ReprojectionRenderer();
+		tilecache = new TileCache(128L << 20);
+		quadtree = new QuadtreeRenderer(tilecache);
+		tilecacheenabled = false;
+		expmap = new ExponentialMapRenderer();
+		exponentialmapenabled = false;
+		metrics = new RenderMetrics(this);
+		probe = new IterationProbe();
+		autodetailenabled = false;
+		
+		xcenter = BigDecimal.ZERO;
+		ycenter = BigDecimal.ZERO;
+		
+		palette = new Palette();
+		recalculate = true;
+		recolor = true;
 	}
 
 	/**
 	 * This function will calculate the mandelbrot set.
 	 * It will first clear the buffer to black, then it will render the upscaled image with the gpukernel
-	 * and then antialias it with the aakernel. It will then collect the time it took to render and if
-	 * if the calculations were performed on the GPU or not
+	 * and then antialias and color it with the aakernel. It will then collect the time it took to render and if
+	 * if the calculations were performed on the GPU or not. If only the colors have changed since the last
+	 * frame the iterations are kept and only the aakernel runs. A frame that is cancelled is left as it is and
+	 * calculated again the next time
 	 */
 	public void calculate(){
 		
+		long kerneltime = 0;
+		
+		if(recalculate){
+			kerneltime = iterate();
+			
+			if(isCancelled()){
+				return;
+			}
+			
+			recalculate = false;
+			reprojection.store(gkernel, xcenter, ycenter);
+		}
+		
+		//stores the results of the rendering
+		timetorender = (int) (kerneltime + color(0, 0, width, height));
+		
+		if(!GPUisfunctional && GPUenabled){
+			GPUisfunctional = true;
+		}
+		
+	}
+	
+	/**
+	 * Calculates only the iterations of the picture without coloring it, so they can be colored somewhere else
+	 * with getIterationsUpscaled() and getIterationLimit(). The next call to calculate() only colors them
+	 */
+	public void calculateIterations(){
+		
+		if(recalculate){
+			timetorender = (int) iterate();
+			
+			if(isCancelled()){
+				return;
+			}
+			
+			recalculate = false;
+			recolor = true;
+			reprojection.store(gkernel, xcenter, ycenter);
+		}
+	}
+	
+	/**
+	 * Calculates a frame that is only close to the real picture by moving the iterations of the previous frame,
+	 * and calculating only the samples it does not have (see ReprojectionRenderer). This is much faster when the
+	 * view has only moved a bit, such as during a zoom. The next call to calculate() calculates the picture in full.
+	 * If anything but the view has changed since the previous frame it is the same as calculate()
+	 */
+	public void calculateReprojected(){
+		
+		if(!recalculate || renderstrategy != RenderStrategy.BruteForce || tilecacheenabled || !reprojection.canReproject(gkernel)){
+			calculate();
+			return;
+		}
+		
 		gkernel.erase();
+		
+		long starttime = System.currentTimeMillis();
+		Kernel kernel = prepareKernel();
+		long kerneltime = System.currentTimeMillis() - starttime;
+		
+		PixelKernel k = (PixelKernel) kernel;
+		lanesused = false;
+		
+		if(kernel == gkernel){
+			lanes.syncSettings(gkernel);
+			k = lanes;
+			lanesused = true;
+		}
+		
+		reprojection.render(tiles, k, gkernel, xcenter, ycenter);
+		
+		if(isCancelled()){
+			return;
+		}
+		
+		kerneltime += reprojection.getTimetorender();
+		iteratedpixels = reprojection.getIteratedPixels();
+		GPUenabled = false;
+		updateIterationLimit(kernel);
+		
+		timetorender = (int) (kerneltime + color(0, 0, width, height));
+	}
+	
+	/**
+	 * Moves the view by a number of pixels, positive values move it to the right and down. The iterations and
+	 * colors that are still in the picture are moved with it, and only the columns and rows that come into view
+	 * are calculated. If anything but the view has changed since the previous frame, or the view moved further
+	 * than the size of the picture, the whole picture is calculated
+	 */
+	public void pan(int dx, int dy){
+		
+		boolean reuse = !recalculate && !tilecacheenabled && Math.abs(dx) < width && Math.abs(dy) < height;
+		
+		translate(4 * (1 / getMagnification()) * dx / width, - 4 * (1 / getMagnification()) * dy / height);
+		
+		if(!reuse){
+			calculate();
+			return;
+		}
+		
+		//the columns on the side the view moved to, and the rows on the top or bottom without those columns
+		int [][] Exposed = {
+				{dx > 0 ? width - dx : 0, 0, dx > 0 ? width : -dx, height},
+				{dx > 0 ? 0 : -dx, dy > 0 ? height - dy : 0, dx > 0 ? width - dx : width, dy > 0 ? height : -dy}};
+		
+		move(gkernel.getIterationsUpscaled(), width * gkernel.getUpscalingWidth(), height * gkernel.getUpscalingHeight(),
+				dx * gkernel.getUpscalingWidth(), dy * gkernel.getUpscalingHeight());
+		
+		long kerneltime = 0, exposedpixels = 0;
+		double previouslimit = iterationlimit;
+		
+		for(int [] Region : Exposed){
+			if(Region[0] < Region[2] && Region[1] < Region[3]){
+				kerneltime += calculateRegion(Region[0], Region[1], Region[2], Region[3]);
+				exposedpixels += iteratedpixels;
+			}
+		}
+		
+		iteratedpixels = exposedpixels;
+		
+		//the picture has already been moved, so only a whole new frame can replace it
+		if(isCancelled()){
+			recalculate = true;
+			return;
+		}
+		
+		recalculate = false;
+		reprojection.store(gkernel, xcenter, ycenter);
+		
+		//the colors can only be moved if they would not have changed
+		if(recolor || iterationlimit != previouslimit){
+			kerneltime += color(0, 0, width, height);
+		}
+		
+		//the colors are moved into the output from the array that has them, which is the output unless it was changed
+		else{
+			move(Previous != null ? Previous : aakernel.getMandelbrotAntialiased(), aakernel.getMandelbrotAntialiased(), width, height, dx, dy);
+			Previous = null;
+			
+			for(int [] Region : Exposed){
+				if(Region[0] < Region[2] && Region[1] < Region[3]){
+					kerneltime += color(Region[0], Region[1], Region[2], Region[3]);
+				}
+			}
+		}
+		
+		timetorender = (int) kerneltime;
+	}
+	
+	/**
+	 * Moves the contents of an array that holds a picture of the given size by dx to the left and dy up.
+	 * The part that comes into view keeps what it had and has to be calculated again
+	 */
+	private void move(Object array, int w, int h, int dx, int dy){
+		move(array, array, w, h, dx, dy);
+	}
+	
+	/**
+	 * Moves a picture of the given size by dx to the left and dy up from one array into another, which can be the
+	 * same array. The part that comes into view keeps what the target had
+	 */
+	private void move(Object source, Object target, int w, int h, int dx, int dy){
+		
+		//the rows are copied in the order that never overwrites a row before it is copied
+		for(int i = 0; i < h - Math.abs(dy); i++){
+			
+			int y = dy > 0 ? i : h - 1 - i;
+			
+			System.arraycopy(source, (y + dy) * w + Math.max(0, dx), target, y * w + Math.max(0, -dx), w - Math.abs(dx));
+		}
+	}
+	
+	/**
+	 * Colors and antialiases a part of the picture from its iterations, and returns how long it took.
+	 * The right and bottom edges are not included
+	 */
+	private long color(int left, int top, int right, int bottom){
+		
+		long starttime = System.nanoTime();
+		StageEvent event = new StageEvent(RenderMetrics.Stage.Antialias);
+		event.begin();
+		
+		palette.update(iterationlimit);
+		aakernel.setPalette(palette);
+		aakernel.setRegion(left, top, right - left);
+		
+		if(left == 0 && top == 0 && right == width && bottom == height){
+			launch(aakernel, Range.create(width * height));
+			recolor = false;
+			Previous = null;
+			metrics.setExecutionMode(RenderMetrics.Stage.Antialias, aakernel.getExecutionMode());
+		}
+		
+		//starting the threads takes longer than coloring a few rows or columns, so they are colored by this thread
+		else if(aakernel.getExecutionMode() != GPUKernel.EXECUTION_MODE.GPU){
+			GPUKernel.EXECUTION_MODE mode = aakernel.getExecutionMode();
+			aakernel.setExecutionMode(GPUKernel.EXECUTION_MODE.SEQ);
+			launch(aakernel, Range.create((right - left) * (bottom - top), 1));
+			aakernel.setExecutionMode(mode);
+		}
+		
+		else{
+			launch(aakernel, Range.create((right - left) * (bottom - top)));
+		}
+		
+		metrics.record(RenderMetrics.Stage.Antialias, System.nanoTime() - starttime, (long) (right - left) * (bottom - top), 0);
+		
+		if(event.shouldCommit()){
+			event.setView(this);
+			event.setWork((long) (right - left) * (bottom - top), aakernel.getExecutionMode(), 0);
+			event.commit();
+		}
+		
+		return aakernel.getExecutionTime();
+	}
+	
+	/**
+	 * Executes a kernel and records it as a KernelLaunchEvent, with the time Aparapi took to convert the kernel to
+	 * OpenCL during the launch. The iterations are counted only while a recording wants the event
+	 */
+	private void launch(Kernel kernel, Range range){
+		
+		KernelLaunchEvent event = new KernelLaunchEvent(kernel.getClass().getSimpleName());
+		long conversiontime = event.isEnabled() ? getConversionTime(kernel) : 0;
+		
+		event.begin();
+		kernel.execute(range);
+		event.end();
+		Launched.add(kernel);
+		
+		if(event.shouldCommit()){
+			event.setView(this);
+			event.setWork(range.getGlobalSize(0), kernel.getExecutionMode(), kernel == aakernel ? 0 : countIterations());
+			event.setConversionTime(getConversionTime(kernel) - conversiontime);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Returns how many milliseconds Aparapi has spent converting the kernel to OpenCL, 0 before launch() has
+	 * executed it
+	 */
+	private long getConversionTime(Kernel kernel){
+		return Launched.contains(kernel) ? kernel.getConversionTime() : 0;
+	}
+	
+	/**
+	 * Calculates the iterations of only a part of the picture with the current view on the CPU, the rest of the
+	 * picture keeps the iterations it has. The part is given in pixels of the picture, the right and bottom edges
+	 * are not included. Returns how long it took
+	 */
+	public long calculateRegion(int left, int top, int right, int bottom){
+		
+		long starttime = System.currentTimeMillis();
+		Kernel kernel = prepareKernel();
+		long kerneltime = System.currentTimeMillis() - starttime;
+		
+		int uw = gkernel.getUpscalingWidth(), uh = gkernel.getUpscalingHeight();
+		float [] Iterations = gkernel.getIterationsUpscaled();
+		
+		for(int y = top * uh; y < bottom * uh; y++){
+			Arrays.fill(Iterations, y * width * uw + left * uw, y * width * uw + right * uw, -1);
+		}
+		
+		PixelKernel k = (PixelKernel) kernel;
+		lanesused = false;
+		
+		if(kernel == gkernel){
+			lanes.syncSettings(gkernel);
+			k = lanes;
+			lanesused = true;
+		}
+		
+		tiles.render(k, left * uw, top * uh, right * uw, bottom * uh);
+		
+		kerneltime += tiles.getTimetorender();
+		iteratedpixels = (long) (right - left) * uw * (bottom - top) * uh;
+		GPUenabled = false;
+		updateIterationLimit(kernel);
+		
+		return kerneltime;
+	}
+	
+	/**
+	 * Calculates the iterations of the upscaled picture and returns how long it took
+	 */
+	private long iterate(){
+		
+		gkernel.erase();
+
+		int range = width * gkernel.getUpscalingWidth() * height * gkernel.getUpscalingHeight();
+		
+		long startnanos = System.nanoTime();
+		StageEvent event = new StageEvent(RenderMetrics.Stage.Iterate);
+		event.begin();
+		
+		long starttime = System.currentTimeMillis();
+		
+		//the tiles of the cache are shared by every view, so they keep the limit of the image detail
+		gkernel.setIterationCeiling(autodetailenabled && !tilecacheenabled ? probe.findLimit(tiles, gkernel) : 0);
 
 		//Kernels on nvidia GPUs crash if they take longer than 2000ms
 		//if the detail or AA gets to high we disable the GPU
+		//a limit from automatic detail is too high when it is above the limit of detail 1
+		double detailonelimit = 50 + Math.max(1, 10 * Math.log(getMagnification()));
 
-		if(GPUisenabled() && (getImageDetail() > 1 || getCurrentAntialiasing() > 4)){
+		if(GPUisenabled() && (getImageDetail() > 1 || getCurrentAntialiasing() > 4 || gkernel.getIterationCeiling() > detailonelimit)){
 				enableGPU(false);
 		}
+		
+		Kernel kernel = prepareKernel();
+		long kerneltime = System.currentTimeMillis() - starttime;
+		
+		lanesused = false;
+		
+		//views that doubles are precise enough for are taken from the tiles in the cache
+		if(tilecacheenabled && kernel == gkernel){
+			
+			quadtree.render(tiles, gkernel);
+			
+			kerneltime += quadtree.getTimetorender();
+			iteratedpixels = quadtree.getIteratedPixels();
+			GPUenabled = false;
+		}
+		
+		//frames within the exponential map are looked up in it
+		else if(exponentialmapenabled && kernel == gkernel && expmap.covers(gkernel, xcenter, ycenter)){
+			
+			expmap.resample(tiles, gkernel, xcenter, ycenter);
+			
+			kerneltime += expmap.getTimetorender();
+			iteratedpixels = 0;
+			GPUenabled = false;
+		}
+		
+		//filling the bands only gives the same picture as brute force for the mandelbrot set without smooth coloring
+		else if(renderstrategy != RenderStrategy.BruteForce && !getRenderJuliaSet() && !getSmoothColoring()){
+			
+			//the position of 0 in the upscaled picture
+			double xzero = (2 - getXCenter() * getMagnification()) * width * gkernel.getUpscalingWidth() / 4;
+			double yzero = (2 + getYCenter() * getMagnification()) * height * gkernel.getUpscalingHeight() / 4;
+			
+			if(renderstrategy == RenderStrategy.Subdivision){
+				subdivision.render(tiles, (PixelKernel) kernel, gkernel.getIterationsUpscaled(), width * gkernel.getUpscalingWidth(),
+						height * gkernel.getUpscalingHeight(), xzero, yzero);
+				
+				kerneltime += subdivision.getTimetorender();
+				iteratedpixels = subdivision.getIteratedPixels();
+			}
+			
+			else{
+				boundarytrace.render(tiles, (PixelKernel) kernel, gkernel.getIterationsUpscaled(), width * gkernel.getUpscalingWidth(),
+						height * gkernel.getUpscalingHeight(), xzero, yzero);
+				
+				kerneltime += boundarytrace.getTimetorender();
+				iteratedpixels = boundarytrace.getIteratedPixels();
+			}
+			
+			GPUenabled = false;
+		}
+		
+		//with adaptive antialiasing most pixels get only one sample, which is done on the CPU
+		else if(adaptiveantialiasing && samplesperpixel > 1){
+			
+			PixelKernel k = (PixelKernel) kernel;
+			
+			if(kernel == gkernel){
+				lanes.syncSettings(gkernel);
+				k = lanes;
+				lanesused = true;
+			}
+			
+			adaptive.render(tiles, k, gkernel.getIterationsUpscaled(), width, height, gkernel.getUpscalingWidth(), gkernel.getUpscalingHeight());
+			
+			kerneltime += adaptive.getTimetorender();
+			iteratedpixels = adaptive.getIteratedPixels();
+			GPUenabled = false;
+		}
+		
+		//kernels that have fallen back to the CPU, or never run on the GPU, are rendered in tiles
+		else if(kernel.getExecutionMode() != GPUKernel.EXECUTION_MODE.GPU){
+			
+			if(kernel == gkernel){
+				lanes.syncSettings(gkernel);
+				tiles.render(lanes, width * gkernel.getUpscalingWidth(), height * gkernel.getUpscalingHeight());
+				lanesused = true;
+			}
+			
+			else{
+				tiles.render((PixelKernel) kernel, width * gkernel.getUpscalingWidth(), height * gkernel.getUpscalingHeight());
+			}
+			
+			kerneltime += tiles.getTimetorender();
+			iteratedpixels = range;
+			GPUenabled = false;
+		}
+		
+		else{
+			//executes kernels on GPU, the limit is known before so the launch can count the iterations
+			updateIterationLimit(kernel);
+			launch(kernel, Range.create(range));
+			
+			kerneltime += kernel.getExecutionTime();
+			iteratedpixels = range;
+			GPUenabled = kernel.getExecutionMode() == (GPUKernel.EXECUTION_MODE.GPU);
+		}
+		
+		updateIterationLimit(kernel);
+		
+		if(tilecacheenabled && kernel == gkernel){
+			iterationlimit = quadtree.getIterationLimit();
+		}
+		
+		if(!isCancelled()){
+			recordIterations(kernel, System.nanoTime() - startnanos, event);
+		}
+		
+		else if(event.shouldCommit()){
+			event.setView(this);
+			event.setCancelled(true);
+			event.commit();
+		}
+		
+		return kerneltime;
+	}
+	
+	/**
+	 * Records the time of the iterations in the metrics and as a StageEvent, with the iterations of the samples of
+	 * the frame and the execution mode the kernel actually ran in. Only a kernel executed on the GPU counts as the
+	 * GPU, the renderers that replace it run in threads on the CPU
+	 */
+	private void recordIterations(Kernel kernel, long nanos, StageEvent event){
+		
+		long iterations = countIterations();
+		GPUKernel.EXECUTION_MODE mode = GPUenabled ? GPUKernel.EXECUTION_MODE.GPU
+				: kernel.getExecutionMode() == GPUKernel.EXECUTION_MODE.GPU ? GPUKernel.EXECUTION_MODE.JTP : kernel.getExecutionMode();
+		
+		metrics.record(RenderMetrics.Stage.Iterate, nanos, iteratedpixels, iterations);
+		metrics.setExecutionMode(RenderMetrics.Stage.Iterate, mode);
+		
+		if(event.shouldCommit()){
+			event.setView(this);
+			event.setWork(iteratedpixels, mode, iterations);
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Returns how many iterations the samples of the upscaled picture took, samples inside the set took every iteration
+	 */
+	private long countIterations(){
+		
+		long iterations = 0;
+		
+		for(float i : gkernel.getIterationsUpscaled()){
+			iterations += i < 0 ? (long) iterationlimit : (long) i;
+		}
+		
+		return iterations;
+	}
+	
+	/**
+	 * Stores the iteration limit of the kernel that calculated the frame
+	 */
+	private void updateIterationLimit(Kernel kernel){
+		
+		//the fixed-point kernel calculates its limit in its own way so that it is the same on every machine
+		if(kernel == fkernel){
+			iterationlimit = fkernel.getIterationLimit();
+		}
+		else{
+			iterationlimit = gkernel.getIterationLimit();
+		}
+	}
 
-		//executes kernels on GPU
-		gkernel.execute(width * gkernel.getUpscalingWidth() * height * gkernel.getUpscalingHeight());
-		aakernel.execute(width * height);
-
-		//stores the results of the rendering
-		timetorender = (int) (gkernel.getExecutionTime() + aakernel.getExecutionTime());
-		GPUenabled = gkernel.getExecutionMode() == (GPUKernel.EXECUTION_MODE.GPU);
+	/**
+	 * Gives the kernel needed for the current precision its settings for the frame and returns it
+	 */
+	private Kernel prepareKernel(){
 		
-		if(!GPUisfunctional && GPUenabled){
-			GPUisfunctional = true;
+		//zooms a bit too deep for doubles are calculated with double-doubles
+		if(getPrecision() == Precision.DoubleDouble){
+			ddkernel.syncSettings(gkernel);
+			ddkernel.setCoordinates(xcenter, ycenter);
+			return ddkernel;
 		}
 		
+		//fixed-point gives the same result on every machine
+		else if(getPrecision() == Precision.FixedPoint){
+			fkernel.syncSettings(gkernel);
+			fkernel.setCoordinates(xcenter, ycenter);
+			return fkernel;
+		}
+		
+		//deeper zooms are calculated as differences from a reference orbit
+		else if(getPrecision() == Precision.Perturbation){
+			pkernel.syncSettings(gkernel);
+			orbit.calculate(xcenter, getYReference(), getRenderJuliaSet(), getJuliaValueReal(), getJuliaValueImaginary(),
+					(int) pkernel.getIterationLimit() + 1, getMagnification());
+			pkernel.setReferenceOrbit(orbit);
+			return pkernel;
+		}
+		
+		return gkernel;
 	}
 
 	/**
@@ -79,6 +690,7 @@ public class MandelbrotGenerator {
 	 */
 	public void setMagnification(double d){
 
+		recalculate |= d != getMagnification();
 		gkernel.setMagnification(d);
 	}
 
@@ -95,12 +707,18 @@ public class MandelbrotGenerator {
 	 */
 	public void setCurrentAntialiasing(int aa) throws IllegalArgumentException{
 
+		//setting the same antialiasing again would clear the iterations
+		if(aa == samplesperpixel){
+			return;
+		}
+		
 		if(aa >=1 && aa <= 16){
 			samplesperpixel = aa;
 
 			gkernel.setAntialiasing(aa);
 			aakernel.setAntialiasing(aa);
-			aakernel.setSource(gkernel.getMandelbrotUpscaled());
+			aakernel.setSource(gkernel.getIterationsUpscaled());
+			recalculate = true;
 		}
 
 		else{
@@ -108,11 +726,363 @@ public class MandelbrotGenerator {
 		}
 	}
 
+	/**
+	 * Returns the number type needed for the current zoom. Doubles are used until two neighbouring samples
+	 * are too close for doubles to tell them apart, then double-doubles until they are too close for those,
+	 * and after that the picture is calculated with perturbation. If fixed-point is enabled it is used
+	 * instead of all the others for as long as it is precise enough
+	 */
+	public Precision getPrecision(){
+		
+		double samplespacing = 4 * (1 / getMagnification()) / (width * gkernel.getUpscalingWidth());
+		double largestcoordinate = Math.max(2, Math.max(Math.abs(getXCenter()), Math.abs(getYCenter())));
+		
+		//fixed-point numbers can only hold values smaller than 16, so the whole picture has to be close to the set
+		if(fixedpointenabled && samplespacing >= precisionmargin * FixedPointKernel.getResolution()
+				&& Math.max(Math.abs(getXCenter()), Math.abs(getYCenter())) + 4 * (1 / getMagnification()) < 8){
+			return Precision.FixedPoint;
+		}
+		
+		if(samplespacing >= precisionmargin * Math.ulp(largestcoordinate)){
+			return Precision.Standard;
+		}
+		
+		//the lo part of a double-double has about 52 more bits than the hi part
+		else if(samplespacing >= precisionmargin * Math.ulp(largestcoordinate) / Math.pow(2, 52)){
+			return Precision.DoubleDouble;
+		}
+		
+		return Precision.Perturbation;
+	}
+	
+	/**
+	 * If true, the picture is calculated with fixed-point numbers whenever they are precise enough.
+	 * This is slower than doubles but every machine will calculate exactly the same picture
+	 */
+	public void enableFixedPoint(boolean b){
+		recalculate |= b != fixedpointenabled;
+		fixedpointenabled = b;
+	}
+	
+	/**
+	 * Returns whether fixed-point numbers are used when they are precise enough
+	 */
+	public boolean fixedPointIsEnabled(){
+		return fixedpointenabled;
+	}
+	
+	/**
+	 * Sets how the upscaled picture is rendered
+	 */
+	public void setRenderStrategy(RenderStrategy r){
+		recalculate |= r != renderstrategy;
+		renderstrategy = r;
+	}
+	
+	/**
+	 * Returns how the upscaled picture is rendered
+	 */
+	public RenderStrategy getRenderStrategy(){
+		return renderstrategy;
+	}
+	
+	/**
+	 * Sets how many threads render the picture when it is not rendered on the GPU. It can not be more than
+	 * the number of processors the program may use
+	 */
+	public void setParallelism(int threads) throws IllegalArgumentException{
+		int previous = tiles.getParallelism();
+		tiles.setParallelism(threads);
+		recalculate |= previous != tiles.getParallelism();
+	}
+	
+	/**
+	 * Returns how many threads render the picture when it is not rendered on the GPU
+	 */
+	public int getParallelism(){
+		return tiles.getParallelism();
+	}
+	
+	/**
+	 * If true, only the pixels on the edges of the bands get all the samples of the antialiasing, the others
+	 * are calculated once. This only works with the BruteForce strategy and always renders on the CPU
+	 */
+	public void enableAdaptiveAntialiasing(boolean b){
+		recalculate |= b != adaptiveantialiasing;
+		adaptiveantialiasing = b;
+	}
+	
+	/**
+	 * Returns whether only the pixels on the edges of the bands get all the samples of the antialiasing
+	 */
+	public boolean adaptiveAntialiasingIsEnabled(){
+		return adaptiveantialiasing;
+	}
+	
+	/**
+	 * Sets how many iterations neighbouring pixels may be apart before adaptive antialiasing gives them all
+	 * their samples. Higher values are faster but leave more edges jagged
+	 */
+	public void setAdaptiveTreshold(int t) throws IllegalArgumentException{
+		int previous = adaptive.getTreshold();
+		adaptive.setTreshold(t);
+		recalculate |= previous != t;
+	}
+	
+	/**
+	 * Returns how many iterations neighbouring pixels may be apart before adaptive antialiasing gives them all their samples
+	 */
+	public int getAdaptiveTreshold(){
+		return adaptive.getTreshold();
+	}
+	
+	/**
+	 * If true, the picture is taken from tiles that are kept in memory whenever doubles are precise enough, so
+	 * the parts of the set that have been seen before are not calculated again. The samples of the tiles are
+	 * a bit apart from the samples of the picture, so the picture is not exactly the same
+	 */
+	public void enableTileCache(boolean b){
+		recalculate |= b != tilecacheenabled;
+		tilecacheenabled = b;
+	}
+	
+	/**
+	 * Returns whether the picture is taken from tiles that are kept in memory
+	 */
+	public boolean tileCacheIsEnabled(){
+		return tilecacheenabled;
+	}
+	
+	/**
+	 * Sets how many bytes of memory the tiles may take, the tiles that were used the longest time ago are removed
+	 * when they take more. Every tile takes as much memory, but pictures with more antialiasing need more of them
+	 */
+	public void setTileCacheSize(long bytes) throws IllegalArgumentException{
+		tilecache.setBudget(bytes);
+	}
+	
+	/**
+	 * Returns how many bytes of memory the tiles may take
+	 */
+	public long getTileCacheSize(){
+		return tilecache.getBudget();
+	}
+	
+	/**
+	 * Returns how many tiles were found in memory
+	 */
+	public long getTileCacheHits(){
+		return tilecache.getHits();
+	}
+	
+	/**
+	 * Keeps the tiles in a file as well, so they can be used again after the program is started again. The file
+	 * takes at most the given number of bytes, and the tiles that were used the longest time ago are overwritten
+	 * when it is full. A null file stops using the previous one
+	 */
+	public void setTileStore(File file, long bytes) throws IOException, IllegalArgumentException{
+
+		TileStore store = file != null ? new TileStore(file, bytes) : null;
+		TileStore previous = tilecache.getStore();
+
+		tilecache.setStore(store);
+
+		if(previous != null){
+			previous.close();
+		}
+	}
+
+	/**
+	 * Returns how many tiles were not in memory but were read from the file
+	 */
+	public long getTileStoreHits(){
+		return tilecache.getStoreHits();
+	}
+
+	/**
+	 * Returns how many tiles had to be calculated because they were not in memory
+	 */
+	public long getTileCacheMisses(){
+		return tilecache.getMisses();
+	}
+	
+	/**
+	 * Returns how many tiles were removed from memory to stay within its size
+	 */
+	public long getTileCacheEvictions(){
+		return tilecache.getEvictions();
+	}
+	
+	/**
+	 * Returns the iterations of the upscaled picture, which are overwritten by the next frame
+	 */
+	public float [] getIterationsUpscaled(){
+		return gkernel.getIterationsUpscaled();
+	}
+	
+	/**
+	 * Returns the number of iterations the last frame was calculated with, which the colors are spread over
+	 */
+	public double getIterationLimit(){
+		return iterationlimit;
+	}
+	
+	/**
+	 * If true, the iteration limit of every frame is the smallest one that leaves fewer than the target fraction of
+	 * a small picture of the view unresolved (see IterationProbe), instead of the one from the image detail. Frames
+	 * that are reprojected or moved keep the limit of the last frame, and the tile cache always uses the image detail
+	 */
+	public void enableAutoDetail(boolean b){
+		recalculate |= b != autodetailenabled;
+		autodetailenabled = b;
+		
+		if(!b){
+			gkernel.setIterationCeiling(0);
+		}
+	}
+	
+	/**
+	 * Returns whether the iteration limit of every frame is found from a small picture of the view
+	 */
+	public boolean autoDetailIsEnabled(){
+		return autodetailenabled;
+	}
+	
+	/**
+	 * Sets the fraction of the samples close to the set that may be shown as inside it with automatic detail,
+	 * lower values give higher limits
+	 */
+	public void setAutoDetailTarget(double t) throws IllegalArgumentException{
+		double previous = probe.getTarget();
+		probe.setTarget(t);
+		recalculate |= autodetailenabled && previous != t;
+	}
+	
+	/**
+	 * Returns the fraction of the samples close to the set that may be shown as inside it with automatic detail
+	 */
+	public double getAutoDetailTarget(){
+		return probe.getTarget();
+	}
+	
+	/**
+	 * Calculates an exponential map around the current center for a zoom from the outer to the inner magnification
+	 * (see ExponentialMapRenderer). While it is enabled, the frames it covers are taken from it instead of being
+	 * calculated. Only zooms that doubles are precise enough for, and whose map is not too large, can be mapped
+	 */
+	public void calculateExponentialMap(double outermagnification, double innermagnification) throws IllegalArgumentException{
+		
+		double samplespacing = 4 / innermagnification / (width * Math.max(gkernel.getUpscalingWidth(), gkernel.getUpscalingHeight()));
+		
+		if(samplespacing < precisionmargin * Math.ulp(Math.max(2, Math.max(Math.abs(getXCenter()), Math.abs(getYCenter()))))){
+			throw new IllegalArgumentException("Doubles are not precise enough for " + innermagnification);
+		}
+		
+		expmap.render(tiles, lanes, gkernel, xcenter, ycenter, outermagnification, innermagnification);
+		
+		iteratedpixels = expmap.getIteratedPixels();
+		recalculate = true;
+	}
+	
+	/**
+	 * If true, the frames that are covered by the exponential map are taken from it
+	 */
+	public void enableExponentialMap(boolean b){
+		recalculate |= b != exponentialmapenabled;
+		exponentialmapenabled = b;
+	}
+	
+	/**
+	 * Returns whether the frames that are covered by the exponential map are taken from it
+	 */
+	public boolean exponentialMapIsEnabled(){
+		return exponentialmapenabled;
+	}
+	
+	/**
+	 * If true, the frame that is being calculated on another thread stops at the next tile and the tiles of the
+	 * frames after it are skipped, until it is set to false again. Only the frames that are rendered in tiles on
+	 * the CPU can be cancelled, a cancelled frame keeps the picture it has and is calculated again the next time
+	 */
+	public void setCancelled(boolean b){
+		tiles.setCancelled(b);
+	}
+	
+	/**
+	 * Returns whether frames are cancelled
+	 */
+	public boolean isCancelled(){
+		return tiles.isCancelled();
+	}
+	
+	/**
+	 * Returns true if the picture has to be calculated or colored again before it shows the current settings
+	 */
+	public boolean isOutdated(){
+		return recalculate || recolor || Previous != null;
+	}
+	
+	/**
+	 * Returns how many upscaled pixels were actually calculated during the last frame
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels;
+	}
+	
+	/**
+	 * Returns how many digits are needed to store the center at the current magnification
+	 */
+	private MathContext getMathContext(){
+		return new MathContext(20 + (int) Math.max(0, Math.log10(getMagnification())));
+	}
+	
+	/**
+	 * Returns the y coordinate of the center of the picture in the set, which like in GPUKernel is scaled by the picture ratio
+	 */
+	private BigDecimal getYReference(){
+		return ycenter.multiply(BigDecimal.valueOf(height)).divide(BigDecimal.valueOf(width), getMathContext());
+	}
+
 	/**
 	 * Sets the center coordinates which will be the center of the picture
 	 */
 	public void setCoordinates(double x, double y){
-		gkernel.setCoordinates(x, y);
+		setCoordinates(new BigDecimal(x), new BigDecimal(y));
+	}
+	
+	/**
+	 * Sets the center coordinates with more precision than a double, needed for deep zooms
+	 */
+	public void setCoordinates(BigDecimal x, BigDecimal y){
+		xcenter = x.round(getMathContext());
+		ycenter = y.round(getMathContext());
+		recalculate = true;
+		gkernel.setCoordinates(xcenter.doubleValue(), ycenter.doubleValue());
+	}
+	
+	/**
+	 * Moves the center of the picture by the given distance without losing precision
+	 */
+	public void translate(double x, double y){
+		setCoordinates(xcenter.add(new BigDecimal(x)), ycenter.add(new BigDecimal(y)));
+	}
+	
+	/**
+	 * Converts integer positions within the frame to the distance from the center within the mandelbrot set
+	 * @param x
+	 * @return
+	 */
+	public double convertXDistance(int x) {
+		return - 2 * (1 / getMagnification()) + (double) 4 * (1 / getMagnification()) * x / width;
+	}
+	
+	/**
+	 * Converts integer positions within the frame to the distance from the center within the mandelbrot set
+	 * @param y
+	 * @return
+	 */
+	public double convertYDistance(int y) {
+		return 2 * (1 / getMagnification()) - (double) 4 * (1 / getMagnification()) * y / height;
 	}
 	
 	/**
@@ -147,6 +1117,20 @@ public class MandelbrotGenerator {
 		return gkernel.getYCenter();
 	}
 	
+	/**
+	 * Returns the exact X coordinate
+	 */
+	public BigDecimal getXCenterExact(){
+		return xcenter;
+	}
+	
+	/**
+	 * Returns the exact Y coordinate
+	 */
+	public BigDecimal getYCenterExact(){
+		return ycenter;
+	}
+	
 	/**
 	 * Returns the number of samples per pixel
 	 */
@@ -161,6 +1145,46 @@ public class MandelbrotGenerator {
 		return timetorender;
 	}
 	
+	/**
+	 * Returns the times of the recent frames, register them to read them over JMX
+	 */
+	public RenderMetrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * Returns the width of the picture
+	 */
+	public int getWidth(){
+		return width;
+	}
+	
+	/**
+	 * Returns the height of the picture
+	 */
+	public int getHeight(){
+		return height;
+	}
+	
+	/**
+	 * Returns how many pixels of the last frame were skipped because they are known to be inside the set
+	 */
+	public int getRejectedPixels(){
+		
+		if(lanesused){
+			return lanes.getRejectedPixels();
+		}
+		
+		return gkernel.getRejectedPixels();
+	}
+	
+	/**
+	 * Returns how many pixels of the last deep zoom frame had to rebase on the reference orbit
+	 */
+	public int getRebasedPixels(){
+		return pkernel.getRebasedPixels();
+	}
+	
 	/**
 	 * Returns true if the calculations were performed on the GPU, false if performed on the CPU
 	 */
@@ -180,29 +1204,53 @@ public class MandelbrotGenerator {
 	 */
 	public void enableGPU(boolean b){
 		
+		recalculate = true;
+		
 		if(b == true){
 			gkernel.setExecutionMode(GPUKernel.EXECUTION_MODE.GPU);
 			aakernel.setExecutionMode(GPUKernel.EXECUTION_MODE.GPU);
+			pkernel.setExecutionMode(GPUKernel.EXECUTION_MODE.GPU);
 		}
 		
 		else{
 			gkernel.setExecutionMode(GPUKernel.EXECUTION_MODE.JTP);
 			aakernel.setExecutionMode(GPUKernel.EXECUTION_MODE.JTP);
+			pkernel.setExecutionMode(GPUKernel.EXECUTION_MODE.JTP);
 		}
 	}
 	
 	/**
-	 * returns the antialiased mandelbrot picture
+	 * returns the antialiased mandelbrot picture, one packed RGB int per pixel
 	 */
 	public int [] getMandelbrot(){
 		return aakernel.getMandelbrotAntialiased();
 	}
 	
+	/**
+	 * Sets the array the picture is drawn into, such as the data of a TYPE_INT_RGB BufferedImage. It must have
+	 * one int for every pixel and has to be set again after changing the size. The picture is colored into it
+	 * with the next frame, and a pan moves the colors of the previous output into it, so the previous output
+	 * must not be changed until then
+	 */
+	public void setOutput(int [] output) throws IllegalArgumentException{
+		
+		if(output.length != width * height){
+			throw new IllegalArgumentException("Invalid value: " + output.length);
+		}
+		
+		if(output != aakernel.getMandelbrotAntialiased() && Previous == null && !recolor){
+			Previous = aakernel.getMandelbrotAntialiased();
+		}
+		
+		aakernel.setTarget(output);
+	}
+	
 	/**
 	 * Sets whether the program will render a julia set or not
 	 * @param b will render a julia set if true, a mandelbrot set if false
 	 */
 	public void setRenderJuliaSet(boolean b){
+		recalculate |= b != getRenderJuliaSet();
 		gkernel.setRenderJuliaSet(b);
 	}
 	
@@ -220,6 +1268,7 @@ public class MandelbrotGenerator {
 	 * @return
 	 */
 	public void setJuliaValues(double real, double imag){
+		recalculate |= real != getJuliaValueReal() || imag != getJuliaValueImaginary();
 		gkernel.setJuliaValues(real, imag);
 	}
 	
@@ -248,13 +1297,17 @@ public class MandelbrotGenerator {
 		
 		gkernel.changeSize(width, height);
 		aakernel.changeSize(width, height);
-		aakernel.setSource(gkernel.getMandelbrotUpscaled());
+		aakernel.setSource(gkernel.getIterationsUpscaled());
+		recalculate = true;
+		recolor = true;
+		Previous = null;
 		}
 	
 	/**
 	 * Sets the size of the total allowed iterations. Higher values will render a picture with more detail
 	 */
 	public void setImageDetail(int i){
+		recalculate |= i != getImageDetail();
 		gkernel.setImageDetail(i);
 	}
 	
@@ -269,42 +1322,78 @@ public class MandelbrotGenerator {
 	 * Sets the red color of the picture. Values must be from 0 to 255;
 	 */
 	public void setRedSensitivity(int r){
-		gkernel.setRedSensitivity(r);
+		palette.setRedSensitivity(r);
+		recolor = true;
 	}
 	
 	/**
 	 * Sets the green color of the picture. Values must be from 0 to 255;
 	 */
 	public void setGreenSensitivity(int g){
-		gkernel.setGreenSensitivity(g);
+		palette.setGreenSensitivity(g);
+		recolor = true;
 	}
 	
 	/**
 	 * Sets the blue color of the picture. Values must be from 0 to 255;
 	 */
 	public void setBlueSensitivity(int b){
-		gkernel.setBlueSensitivity(b);
+		palette.setBlueSensitivity(b);
+		recolor = true;
 	}
 	
 	/**
 	 * Sets how much red the picture will have (values from 0 to 255)
 	 */
 	public int getRedSensitivity(){
-		return gkernel.getRedSensitivity();
+		return palette.getRedSensitivity();
 	}
 	
 	/**
 	 * Sets how much green the picture will have (values from 0 to 255)
 	 */
 	public int getGreenSensitivity(){
-		return gkernel.getGreenSensitivity();
+		return palette.getGreenSensitivity();
 	}
 	
 	/**
 	 * Sets how much blue the picture will have (values from 0 to 255)
 	 */
 	public int getBlueSensitivity(){
-		return gkernel.getBlueSensitivity();
+		return palette.getBlueSensitivity();
+	}
+	
+	/**
+	 * Moves the colors by a number of iterations, changing it every frame cycles the colors
+	 */
+	public void setColorOffset(int o){
+		palette.setOffset(o);
+		recolor = true;
+	}
+	
+	/**
+	 * Returns how many iterations the colors are moved by
+	 */
+	public int getColorOffset(){
+		return palette.getOffset();
+	}
+	
+	/**
+	 * Sets whether the colors blend smoothly between the iterations. The set is calculated again the first
+	 * time it is enabled, since the kernels only store the fractions of the iterations when it is needed
+	 */
+	public void setSmoothColoring(boolean b){
+		recalculate |= b && !gkernel.getSmoothColoring();
+		gkernel.setSmoothColoring(b);
+		palette.setSmoothColoring(b);
+		recolor = true;
+	}
+	
+	/**
+	 * Returns whether the colors blend smoothly between the iterations
+	 */
+	public boolean getSmoothColoring(){
+		return palette.getSmoothColoring();
 	}
 	
 
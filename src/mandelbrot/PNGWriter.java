@@ -0,0 +1,172 @@
+package mandelbrot;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG file a few rows at a time, so a picture can be written without ever being in memory as a whole.
+ * The rows are compressed as they come and written out in IDAT chunks, ImageIO can not do this since it needs
+ * the whole picture at once.
+ */
+
+public class PNGWriter implements Closeable{
+
+	private static final byte [] Signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+	//the most bytes of compressed rows in one chunk
+	private static final int chunksize = 1 << 16;
+
+	private DataOutputStream out;
+	private DeflaterOutputStream deflater;
+	private int width, height, rows;
+
+	//the bytes of the current and the previous row, and the filtered row with the filter type first
+	private byte [] Row, Above, Filtered;
+
+	/**
+	 * Starts a picture with 8 bit RGB pixels, the file is done once every row has been written and the writer is closed
+	 */
+	public PNGWriter(OutputStream o, int w, int h) throws IOException, IllegalArgumentException{
+
+		if(w < 1 || h < 1){
+			throw new IllegalArgumentException("Invalid size: " + w + "x" + h);
+		}
+
+		out = new DataOutputStream(o);
+		width = w;
+		height = h;
+		rows = 0;
+
+		Row = new byte[3 * width];
+		Above = new byte[3 * width];
+		Filtered = new byte[1 + 3 * width];
+
+		out.write(Signature);
+
+		byte [] Header = new byte[13];
+		writeInt(Header, 0, width);
+		writeInt(Header, 4, height);
+		Header[8] = 8;	//bits per color
+		Header[9] = 2;	//RGB
+		writeChunk("IHDR", Header, 0, Header.length);
+
+		deflater = new DeflaterOutputStream(new Chunks(), new Deflater(Deflater.DEFAULT_COMPRESSION), chunksize);
+	}
+
+	/**
+	 * Writes the next rows of the picture from packed RGB pixels, starting at the offset of the array
+	 */
+	public void writeRows(int [] Pixels, int offset, int count) throws IOException, IllegalStateException{
+
+		if(rows + count > height){
+			throw new IllegalStateException("The picture only has " + height + " rows");
+		}
+
+		for(int y = 0; y < count; y++){
+
+			int start = offset + y * width;
+
+			for(int x = 0; x < width; x++){
+				int pixel = Pixels[start + x];
+				Row[3 * x] = (byte) (pixel >> 16);
+				Row[3 * x + 1] = (byte) (pixel >> 8);
+				Row[3 * x + 2] = (byte) pixel;
+			}
+
+			filter();
+			deflater.write(Filtered);
+			rows++;
+		}
+	}
+
+	/**
+	 * Stores the row with the Up filter in Filtered, and keeps the row for the next one. The bands of colors
+	 * of the set are mostly taller than one row, so the differences to the row above are mostly zero
+	 */
+	private void filter(){
+
+		Filtered[0] = 2;
+
+		for(int i = 0; i < Row.length; i++){
+			Filtered[i + 1] = (byte) (Row[i] - Above[i]);
+		}
+
+		byte [] temp = Above;
+		Above = Row;
+		Row = temp;
+	}
+
+	/**
+	 * Finishes the compressed rows and ends the file. Every row must have been written
+	 */
+	@Override
+	public void close() throws IOException, IllegalStateException{
+
+		if(rows != height){
+			out.close();
+			throw new IllegalStateException("Only " + rows + " of " + height + " rows were written");
+		}
+
+		deflater.close();
+		writeChunk("IEND", new byte[0], 0, 0);
+		out.close();
+	}
+
+	/**
+	 * Writes a chunk with its length and checksum
+	 */
+	private void writeChunk(String type, byte [] Data, int offset, int length) throws IOException{
+
+		byte [] Type = type.getBytes(StandardCharsets.US_ASCII);
+
+		CRC32 crc = new CRC32();
+		crc.update(Type);
+		crc.update(Data, offset, length);
+
+		out.writeInt(length);
+		out.write(Type);
+		out.write(Data, offset, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Writes an int in big-endian order, as PNG uses
+	 */
+	private static void writeInt(byte [] Data, int offset, int value){
+		Data[offset] = (byte) (value >> 24);
+		Data[offset + 1] = (byte) (value >> 16);
+		Data[offset + 2] = (byte) (value >> 8);
+		Data[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Puts the compressed rows in IDAT chunks, closing it does not close the file
+	 */
+	private class Chunks extends OutputStream{
+
+		@Override
+		public void write(int b) throws IOException{
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte [] Data, int offset, int length) throws IOException{
+
+			while(length > 0){
+				int size = Math.min(length, chunksize);
+				writeChunk("IDAT", Data, offset, size);
+				offset += size;
+				length -= size;
+			}
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package mandelbrot;
+
+/**
+ * Turns the iterations stored by the kernels into colors. The color of every whole number of iterations is
+ * calculated once into a table (3 ints per iteration) which AntialiasingKernel looks up for each sample, so
+ * changing the colors only rebuilds the table and never calculates the set again.
+ *
+ * The offset moves the colors along the table, which is used to cycle the colors. With smooth coloring the
+ * color between two iterations is used, from the fraction of an iteration the kernels stored.
+ */
+
+public class Palette {
+
+	private int redsensitivity, greensensitivity, bluesensitivity;
+	private int offset;
+	private boolean smoothcoloring;
+
+	//the table is rebuilt when the colors or the iteration limit have changed
+	private int [] Colors;
+	private double iterationlimit;
+	private boolean changed;
+
+	public Palette(){
+
+		redsensitivity = 1;
+		greensensitivity = 155;
+		bluesensitivity = 255;
+		offset = 0;
+		smoothcoloring = false;
+
+		Colors = new int[0];
+		changed = true;
+	}
+
+	/**
+	 * Makes sure the table has a color for every iteration up to the limit, and rebuilds it if anything has changed
+	 */
+	public void update(double limit){
+
+		if(!changed && limit == iterationlimit){
+			return;
+		}
+
+		iterationlimit = limit;
+
+		//the value of an iteration is the same as the kernels calculated before they stored iterations instead of colors.
+		//one extra color is stored after the last iteration so that smooth coloring always has a next color
+		int size = getSize() + 1;
+
+		if(Colors.length != 3 * size){
+			Colors = new int[3 * size];
+		}
+
+		//the extra color can be a bit above the sensitivity, it must not be above 255 since the colors are packed into one int
+		for(int i = 0; i < size; i++){
+			Colors[3 * i] = Math.min(redsensitivity, (int) (redsensitivity * i/iterationlimit));
+			Colors[3 * i + 1] = Math.min(greensensitivity, (int) (greensensitivity * i/iterationlimit));
+			Colors[3 * i + 2] = Math.min(bluesensitivity, (int) (bluesensitivity * i/iterationlimit));
+		}
+
+		changed = false;
+	}
+
+	/**
+	 * Returns the number of fractional iterations that a value which escaped after the given iterations with
+	 * the given squared distance from 0 really needed. The fraction is kept below 1 so the whole iterations stay the same
+	 */
+	public static float getSmoothIterations(int iterations, double squaredradius){
+
+		double fraction = 1 - Math.log(0.5 * Math.log(squaredradius) / Math.log(2)) / Math.log(2);
+
+		return (float) (iterations + Math.min(0.99, Math.max(0, fraction)));
+	}
+
+	/**
+	 * Returns the table of colors, 3 ints for each iteration
+	 */
+	public int [] getColors(){
+		return Colors;
+	}
+
+	/**
+	 * Returns how many iterations have their own color, the iterations from 0 up to the limit
+	 */
+	public int getSize(){
+		return (int) iterationlimit + 1;
+	}
+
+	/**
+	 * Sets how many iterations the colors are moved by
+	 */
+	public void setOffset(int o){
+		offset = o;
+	}
+
+	/**
+	 * Returns how many iterations the colors are moved by, between 0 and the size of the table
+	 */
+	public int getOffset(){
+		return ((offset % getSize()) + getSize()) % getSize();
+	}
+
+	/**
+	 * Sets whether the colors between two iterations are used
+	 */
+	public void setSmoothColoring(boolean b){
+		smoothcoloring = b;
+	}
+
+	/**
+	 * Returns whether the colors between two iterations are used
+	 */
+	public boolean getSmoothColoring(){
+		return smoothcoloring;
+	}
+
+	/**
+	 * Sets the red color of the picture. Values must be from 0 to 255;
+	 */
+	public void setRedSensitivity(int r) throws IllegalArgumentException{
+
+		if(r >= 0 && r <= 255){
+			redsensitivity = r;
+			changed = true;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + r);
+		}
+	}
+
+	/**
+	 * Sets the green color of the picture. Values must be from 0 to 255;
+	 */
+	public void setGreenSensitivity(int g) throws IllegalArgumentException{
+
+		if(g >= 0 && g <= 255){
+			greensensitivity = g;
+			changed = true;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + g);
+		}
+	}
+
+	/**
+	 * Sets the blue color of the picture. Values must be from 0 to 255;
+	 */
+	public void setBlueSensitivity(int b) throws IllegalArgumentException{
+
+		if(b >= 0 && b <= 255){
+			bluesensitivity = b;
+			changed = true;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + b);
+		}
+	}
+
+	/**
+	 * Returns how much red the picture will have (values from 0 to 255)
+	 */
+	public int getRedSensitivity(){
+		return redsensitivity;
+	}
+
+	/**
+	 * Returns how much green the picture will have (values from 0 to 255)
+	 */
+	public int getGreenSensitivity(){
+		return greensensitivity;
+	}
+
+	/**
+	 * Returns how much blue the picture will have (values from 0 to 255)
+	 */
+	public int getBlueSensitivity(){
+		return bluesensitivity;
+	}
+}
@@ -0,0 +1,180 @@
+package mandelbrot;
+import com.amd.aparapi.Kernel;
+
+/**
+ * Calculates deep zooms where the coordinates of neighbouring pixels can no longer be told apart with doubles.
+ * Instead of iterating each pixel z = z^2 + c directly, one reference orbit Z is calculated with high precision
+ * (see ReferenceOrbit) and each pixel only iterates its difference dz from that orbit:
+ *
+ * dz = 2 * Z * dz + dz^2 + dc
+ *
+ * The difference is very small and can be stored in a double no matter how deep the zoom is. When the pixel orbit
+ * comes closer to 0 than its difference (or the reference orbit ends) the difference would lose its precision,
+ * this is a glitch. The pixel then rebases, it continues from the start of the rebase orbit with dz = z.
+ *
+ * Like GPUKernel each run() call calculates one upscaled pixel and all of it can be converted into OpenCL.
+ */
+
+public class PerturbationKernel extends Kernel implements PixelKernel{
+
+	private final int totaliterations = 50, escapetreshold = 4;
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
+	private double magnification, iterationceiling;
+	private float [] IterationsUpscaled;
+	private boolean renderjuliaset, smoothcoloring;
+
+	//the reference orbit and where its parts start and end
+	private double [] OrbitReal, OrbitImaginary;
+	private int primaryend, rebasestart, rebaseend;
+
+	//counts the pixels that had to rebase at least once during a frame
+	private int [] RebasedPixels;
+
+	public PerturbationKernel(int w, int h){
+
+		width = w;
+		height = h;
+		renderjuliaset = false;
+		imagedetail = 1;
+		magnification = 1;
+		upscalingwidth = 1;
+		upscalingheight = 1;
+
+		OrbitReal = new double[1];
+		OrbitImaginary = new double[1];
+		RebasedPixels = new int[1];
+		IterationsUpscaled = new float[width * height];
+	}
+
+	/**
+	 * Calculates the difference of one pixel from the reference orbit
+	 */
+	@Override
+	public void run(){
+
+		int xpixel = getGlobalId()%(width * upscalingwidth);
+		int ypixel = getGlobalId()/(width * upscalingwidth);
+
+		calculatePixel(xpixel, ypixel);
+	}
+
+	/**
+	 * Calculates the color of one pixel in the upscaled picture
+	 */
+	public void calculatePixel(int xpixel, int ypixel){
+
+		int z = ypixel * width * upscalingwidth + xpixel;
+
+		//the distance from the center of the picture, the same conversion as in GPUKernel without the center
+		double xdelta = - 2 * (1 / magnification) + (double) 4 * (1 / magnification) * xpixel / (width * upscalingwidth);
+		double ydelta = ((double) height/width)*(2 * (1 / magnification) - (double) 4 * (1 / magnification) * ypixel / (height * upscalingheight));
+
+		double zreal, zimag, dzrealtemp, orbitreal, orbitimag;
+		double dzreal = xdelta, dzimag = ydelta, dcreal = xdelta, dcimag = ydelta;
+
+		//the mandelbrot orbit starts at 0, so the pixel starts at Z1 = c. A julia set has the same c for every pixel
+		int orbitindex = 1;
+		int orbitend = primaryend;
+
+		if(renderjuliaset){
+			orbitindex = 0;
+			dcreal = 0;
+			dcimag = 0;
+		}
+
+		int currentiterations = 0;
+		boolean finished = false, rebased = false;
+
+		double newtreshold = getIterationLimit();
+
+		while(currentiterations <= newtreshold && finished == false){
+
+			zreal = OrbitReal[orbitindex] + dzreal;
+			zimag = OrbitImaginary[orbitindex] + dzimag;
+
+			if(zreal*zreal + zimag*zimag >= escapetreshold){
+
+				IterationsUpscaled[z] = currentiterations;
+
+				//the same fraction as in GPUKernel
+				if(smoothcoloring){
+					double fraction = 1 - log(0.5 * log(zreal*zreal + zimag*zimag) / log(2.0)) / log(2.0);
+					IterationsUpscaled[z] = (float) (currentiterations + min(0.99, max(0, fraction)));
+				}
+
+				finished = true;
+			}
+
+			else{
+
+				//the pixel is closer to 0 than to the reference, or the reference has escaped, so we rebase
+				if(zreal*zreal + zimag*zimag < dzreal*dzreal + dzimag*dzimag || orbitindex == orbitend){
+					dzreal = zreal;
+					dzimag = zimag;
+					orbitindex = rebasestart;
+					orbitend = rebaseend;
+					rebased = true;
+				}
+
+				orbitreal = OrbitReal[orbitindex];
+				orbitimag = OrbitImaginary[orbitindex];
+
+				dzrealtemp = 2 * (orbitreal*dzreal - orbitimag*dzimag) + dzreal*dzreal - dzimag*dzimag + dcreal;
+				dzimag = 2 * (orbitreal*dzimag + orbitimag*dzreal) + 2*dzreal*dzimag + dcimag;
+				dzreal = dzrealtemp;
+
+				orbitindex++;
+			}
+
+			currentiterations++;
+		}
+
+		if(rebased){
+			atomicAdd(RebasedPixels, 0, 1);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of iterations, this is the ceiling of GPUKernel or grows with the magnification in the same way
+	 */
+	public double getIterationLimit(){
+		return iterationceiling > 0 ? iterationceiling : totaliterations + max(1, 10 * imagedetail * log(magnification));
+	}
+
+	/**
+	 * Copies the size, view and color settings from the kernel that owns them
+	 */
+	public void syncSettings(GPUKernel settings){
+
+		width = settings.getWidth();
+		height = settings.getHeight();
+		upscalingwidth = settings.getUpscalingWidth();
+		upscalingheight = settings.getUpscalingHeight();
+		magnification = settings.getMagnification();
+		imagedetail = settings.getImageDetail();
+		iterationceiling = settings.getIterationCeiling();
+		smoothcoloring = settings.getSmoothColoring();
+		renderjuliaset = settings.getRenderJuliaSet();
+		IterationsUpscaled = settings.getIterationsUpscaled();
+		RebasedPixels[0] = 0;
+	}
+
+	/**
+	 * Sets the reference orbit that all pixels will be calculated from
+	 */
+	public void setReferenceOrbit(ReferenceOrbit orbit){
+
+		OrbitReal = orbit.getOrbitReal();
+		OrbitImaginary = orbit.getOrbitImaginary();
+		primaryend = orbit.getPrimaryEnd();
+		rebasestart = orbit.getRebaseStart();
+		rebaseend = orbit.getRebaseEnd();
+	}
+
+	/**
+	 * Returns how many pixels of the last frame had to rebase to a new part of the reference orbit
+	 */
+	public int getRebasedPixels(){
+		return RebasedPixels[0];
+	}
+}
@@ -0,0 +1,35 @@
+package mandelbrot;
+
+/**
+ * A kernel that can calculate single pixels of the upscaled picture outside of execute(). The renderers in
+ * MandelbrotGenerator that decide for themselves which pixels need to be calculated use this.
+ * The kernel must already have been given its settings for the frame before it is used.
+ */
+
+public interface PixelKernel {
+
+	/**
+	 * Calculates the color of the pixel at the given position in the upscaled picture and stores it
+	 */
+	public void calculatePixel(int xpixel, int ypixel);
+
+	/**
+	 * Calculates count pixels of a row, starting at left and moving step pixels to the right each time
+	 */
+	public default void calculateRow(int left, int ypixel, int count, int step){
+
+		for(int i = 0; i < count; i++){
+			calculatePixel(left + i * step, ypixel);
+		}
+	}
+
+	/**
+	 * Calculates every pixel from left to right and from top to bottom, the right and bottom edges are not included
+	 */
+	public default void calculateTile(int left, int top, int right, int bottom){
+
+		for(int y = top; y < bottom; y++){
+			calculateRow(left, y, right - left, 1);
+		}
+	}
+}
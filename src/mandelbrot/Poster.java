@@ -0,0 +1,251 @@
+package mandelbrot;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a picture of any size without a window and writes it to a PNG file. The picture is calculated in bands
+ * of rows by a few MandelbrotGenerators at the same time, and every band is written by PNGWriter as soon as the
+ * bands above it are done. Only the bands that are being calculated or waiting to be written are in memory,
+ * so the memory does not depend on the height of the picture.
+ *
+ * Every band is a picture of its own with the same width and magnification, its center is moved so its rows are
+ * the same as the rows of the whole picture would be.
+ */
+
+public class Poster {
+
+	//the upscaled samples a band has at most, the band is made fewer rows high to stay below this
+	private final int bandsamples = 1 << 20;
+
+	private int width, height, antialiasing, imagedetail, parallelism;
+	private double magnification;
+	private BigDecimal xcenter, ycenter;
+
+	//stores how long rendering takes
+	private long timetorender;
+
+	public Poster(int w, int h) throws IllegalArgumentException{
+
+		if(w < 1 || h < 1){
+			throw new IllegalArgumentException("Invalid size: " + w + "x" + h);
+		}
+
+		width = w;
+		height = h;
+		antialiasing = 1;
+		imagedetail = 1;
+		parallelism = 2;
+		magnification = 1;
+		xcenter = BigDecimal.ZERO;
+		ycenter = BigDecimal.ZERO;
+	}
+
+	/**
+	 * Renders a picture from the command line, run without arguments to see them
+	 */
+	public static void main(String [] args) throws IOException{
+
+		if(args.length < 3){
+			System.out.println("Usage: Poster file width height [x y magnification [antialiasing [detail]]]");
+			return;
+		}
+
+		Poster poster = new Poster(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+
+		if(args.length >= 6){
+			poster.setCoordinates(new BigDecimal(args[3]), new BigDecimal(args[4]));
+			poster.setMagnification(Double.parseDouble(args[5]));
+		}
+
+		if(args.length >= 7){
+			poster.setAntialiasing(Integer.parseInt(args[6]));
+		}
+
+		if(args.length >= 8){
+			poster.setImageDetail(Integer.parseInt(args[7]));
+		}
+
+		poster.render(new File(args[0]));
+		System.out.println("Rendered " + args[0] + " in " + poster.getTimetorender() + " ms");
+	}
+
+	/**
+	 * Renders the picture band by band and writes it to the file
+	 */
+	public void render(File file) throws IOException{
+
+		long starttime = System.currentTimeMillis();
+
+		int bandheight = getBandHeight();
+		int bands = (height + bandheight - 1) / bandheight;
+
+		//the generators are handed from band to band, there is one for every band that is calculated at the same time
+		BlockingQueue<MandelbrotGenerator> Generators = new ArrayBlockingQueue<MandelbrotGenerator>(parallelism);
+
+		for(int i = 0; i < parallelism; i++){
+			MandelbrotGenerator generator = new MandelbrotGenerator(width, bandheight);
+			generator.setCurrentAntialiasing(antialiasing);
+			generator.setImageDetail(imagedetail);
+			generator.setMagnification(magnification);
+			Generators.add(generator);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+
+		try(PNGWriter writer = new PNGWriter(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), width, height)){
+
+			//the bands in the order they are written, a new band is only started when one has been written
+			ArrayDeque<Future<int []>> Pending = new ArrayDeque<Future<int []>>();
+			int next = 0;
+
+			for(int written = 0; written < bands; written++){
+
+				while(next < bands && Pending.size() < 2 * parallelism){
+					int top = next * bandheight;
+					int rows = Math.min(bandheight, height - top);
+					Pending.add(executor.submit(() -> renderBand(Generators, top, rows)));
+					next++;
+				}
+
+				int [] Band = Pending.poll().get();
+				writer.writeRows(Band, 0, Band.length / width);
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+		finally{
+			executor.shutdownNow();
+		}
+
+		timetorender = System.currentTimeMillis() - starttime;
+	}
+
+	/**
+	 * Calculates the rows of a band with the first free generator and returns their pixels
+	 */
+	private int [] renderBand(BlockingQueue<MandelbrotGenerator> Generators, int top, int rows) throws InterruptedException{
+
+		MandelbrotGenerator generator = Generators.take();
+
+		try{
+			if(generator.getMandelbrot().length != width * rows){
+				generator.changeSize(width, rows);
+			}
+
+			generator.setCoordinates(xcenter, getBandCenter(top, rows));
+			generator.calculate();
+
+			return generator.getMandelbrot().clone();
+		}
+		finally{
+			Generators.add(generator);
+		}
+	}
+
+	/**
+	 * Returns the y coordinate of the center of a band. GPUKernel places row y of a picture h high at
+	 * h / w * (ycenter + 2 / m) - 4 / m * y / w, so a band of b rows starting at row top has the same rows
+	 * as the whole picture if its center is (h * ycenter + 2 / m * (h - b) - 4 / m * top) / b
+	 */
+	private BigDecimal getBandCenter(int top, int rows){
+
+		MathContext context = new MathContext(20 + (int) Math.max(0, Math.log10(magnification)));
+		BigDecimal scale = BigDecimal.valueOf(4 / magnification);
+
+		return ycenter.multiply(BigDecimal.valueOf(height))
+				.add(scale.multiply(BigDecimal.valueOf((height - rows) / 2.0 - top)))
+				.divide(BigDecimal.valueOf(rows), context);
+	}
+
+	/**
+	 * Returns how many rows a band has
+	 */
+	public int getBandHeight(){
+		return Math.max(1, Math.min(height, bandsamples / (width * antialiasing)));
+	}
+
+	/**
+	 * Sets the center coordinates of the picture
+	 */
+	public void setCoordinates(BigDecimal x, BigDecimal y){
+		xcenter = x;
+		ycenter = y;
+	}
+
+	/**
+	 * Sets the magnification, with the same meaning as in MandelbrotGenerator
+	 */
+	public void setMagnification(double m) throws IllegalArgumentException{
+
+		if(m > 0){
+			magnification = m;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + m);
+		}
+	}
+
+	/**
+	 * Sets the samples per pixel, with the same values as MandelbrotGenerator
+	 */
+	public void setAntialiasing(int aa) throws IllegalArgumentException{
+
+		if(aa >= 1 && aa <= 16){
+			antialiasing = aa;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + aa);
+		}
+	}
+
+	/**
+	 * Sets the image detail, with the same meaning as in MandelbrotGenerator
+	 */
+	public void setImageDetail(int i){
+		imagedetail = i;
+	}
+
+	/**
+	 * Sets how many bands are calculated at the same time. Every band has a generator of its own, and twice
+	 * as many bands can wait to be written
+	 */
+	public void setParallelism(int bands) throws IllegalArgumentException{
+
+		if(bands >= 1){
+			parallelism = bands;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + bands);
+		}
+	}
+
+	/**
+	 * Returns how many bands are calculated at the same time
+	 */
+	public int getParallelism(){
+		return parallelism;
+	}
+
+	/**
+	 * Returns the time it took to render the last picture
+	 */
+	public long getTimetorender(){
+		return timetorender;
+	}
+}
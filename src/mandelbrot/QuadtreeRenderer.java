@@ -0,0 +1,172 @@
+package mandelbrot;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Renders the upscaled picture from square tiles of samples that are kept in a TileCache, so the parts of the set
+ * that have been seen before are not calculated again. The tiles form a quadtree: a tile on level z is 4 / 2^z
+ * wide in the set, tile 0, 0 starts at 0 and the tiles are numbered to the right and down.
+ *
+ * A picture is taken from the first level where the samples are at least as close as the samples of the
+ * picture, and every sample of the picture gets the iterations of the closest sample of the tiles. The tiles
+ * that are not in the cache are calculated by LaneRenderer, a tile per thread of TileRenderer, and the picture is
+ * taken from the tiles a row per thread. A frame that is cancelled stops before the tiles and rows that have not
+ * started. The tiles are read where the cache keeps them, so a tile from a TileStore is read straight from the
+ * mapped file.
+ */
+
+public class QuadtreeRenderer {
+
+	//samples on each side of a tile
+	public static final int TILESIZE = 128;
+
+	//the number of iterations of a level is the one GPUKernel uses for a picture this wide with the same samples
+	private final int referencewidth = 1024;
+	private final int totaliterations = 50;
+
+	private TileCache cache;
+
+	private int level, calculatedtiles;
+	private double iterationlimit;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public QuadtreeRenderer(TileCache c){
+		cache = c;
+	}
+
+	/**
+	 * Renders the view of the kernel into its array. The view must be precise enough for doubles, a cancelled frame
+	 * can leave the array partly rendered and adds no tiles to the cache
+	 */
+	public void render(TileRenderer tiles, GPUKernel settings){
+
+		long starttime = System.currentTimeMillis();
+
+		int fullwidth = settings.getWidth() * settings.getUpscalingWidth();
+		int fullheight = settings.getHeight() * settings.getUpscalingHeight();
+		double magnification = settings.getMagnification();
+		double ratio = (double) settings.getHeight() / settings.getWidth();
+
+		//the same conversion as in GPUKernel
+		double xorigin = settings.getXCenter() - 2 / magnification;
+		double yorigin = ratio * (settings.getYCenter() + 2 / magnification);
+		double xspacing = 4 / magnification / fullwidth;
+		double yspacing = ratio * 4 / magnification / fullheight;
+
+		level = (int) Math.max(0, Math.ceil(Math.log(4 / (Math.min(xspacing, yspacing) * TILESIZE)) / Math.log(2)));
+		double spacing = Math.scalb(4.0 / TILESIZE, -level);
+		iterationlimit = totaliterations + Math.max(1, 10 * settings.getImageDetail() * Math.log(4 / (spacing * referencewidth)));
+
+		//the tile and the sample in the tile of every column and row of the picture
+		long [] Xtile = new long[fullwidth], Ytile = new long[fullheight];
+		int [] Xsample = new int[fullwidth], Ysample = new int[fullheight];
+
+		for(int x = 0; x < fullwidth; x++){
+			long sample = Math.round((xorigin + xspacing * x) / spacing);
+			Xtile[x] = Math.floorDiv(sample, TILESIZE);
+			Xsample[x] = Math.floorMod(sample, TILESIZE);
+		}
+
+		for(int y = 0; y < fullheight; y++){
+			long sample = Math.round(-(yorigin - yspacing * y) / spacing);
+			Ytile[y] = Math.floorDiv(sample, TILESIZE);
+			Ysample[y] = Math.floorMod(sample, TILESIZE);
+		}
+
+		long xfirst = Xtile[0], yfirst = Ytile[0];
+		int xtiles = (int) (Xtile[fullwidth - 1] - xfirst + 1), ytiles = (int) (Ytile[fullheight - 1] - yfirst + 1);
+
+		//the tiles are kept here during the frame, so they are not lost if the cache removes them
+		FloatBuffer [] Tiles = new FloatBuffer[xtiles * ytiles];
+		TileCache.Key [] Keys = new TileCache.Key[xtiles * ytiles];
+		List<Integer> Missing = new ArrayList<Integer>();
+
+		for(int i = 0; i < Tiles.length; i++){
+
+			Keys[i] = new TileCache.Key(level, xfirst + i % xtiles, yfirst + i / xtiles, settings.getRenderJuliaSet(),
+					settings.getJuliaValueReal(), settings.getJuliaValueImaginary(), settings.getImageDetail(), settings.getSmoothColoring());
+			Tiles[i] = cache.get(Keys[i]);
+
+			if(Tiles[i] == null){
+				Missing.add(i);
+			}
+		}
+
+		calculatedtiles = Missing.size();
+
+		tiles.forEach(Missing.size(), 1, m -> {
+
+			int i = Missing.get(m);
+			float [] Tile = new float[TILESIZE * TILESIZE];
+			Arrays.fill(Tile, -1);
+
+			LaneRenderer lanes = new LaneRenderer();
+			lanes.syncTile(settings, (xfirst + i % xtiles) * TILESIZE * spacing, -(yfirst + i / xtiles) * TILESIZE * spacing,
+					spacing, TILESIZE, iterationlimit, Tile);
+			lanes.calculateTile(0, 0, TILESIZE, TILESIZE);
+
+			Tiles[i] = FloatBuffer.wrap(Tile);
+		});
+
+		//the tiles that were skipped are missing
+		if(tiles.isCancelled()){
+			timetorender = (int) (System.currentTimeMillis() - starttime);
+			return;
+		}
+
+		float [] IterationsUpscaled = settings.getIterationsUpscaled();
+
+		tiles.forEach(fullheight, 1, y -> {
+
+			int row = (int) (Ytile[y] - yfirst) * xtiles;
+
+			for(int x = 0; x < fullwidth; x++){
+				IterationsUpscaled[y * fullwidth + x] = Tiles[row + (int) (Xtile[x] - xfirst)].get(Ysample[y] * TILESIZE + Xsample[x]);
+			}
+		});
+
+		if(tiles.isCancelled()){
+			timetorender = (int) (System.currentTimeMillis() - starttime);
+			return;
+		}
+
+		//the new tiles are only added once the picture is done, so they can not take the place of a tile from the file that is still read
+		for(int i : Missing){
+			cache.put(Keys[i], Tiles[i].array());
+		}
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Returns the level of the tiles the last frame was taken from
+	 */
+	public int getLevel(){
+		return level;
+	}
+
+	/**
+	 * Returns the number of iterations the tiles of the last frame were calculated with
+	 */
+	public double getIterationLimit(){
+		return iterationlimit;
+	}
+
+	/**
+	 * Returns how many samples were calculated during the last frame, the rest came from the cache
+	 */
+	public long getIteratedPixels(){
+		return (long) calculatedtiles * TILESIZE * TILESIZE;
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
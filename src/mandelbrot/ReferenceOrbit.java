@@ -0,0 +1,164 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * Calculates the orbit of a single reference point with arbitrary precision (BigDecimal) and stores it as doubles.
+ * The PerturbationKernel then only has to iterate the tiny difference between each pixel and this reference,
+ * which fits in a double even when the coordinates themselves do not.
+ *
+ * The stored orbit consists of two parts. The primary orbit starts at the center of the picture and is the one
+ * every pixel starts on. The rebase orbit starts at 0 and is the one pixels switch to when their difference from
+ * the reference grows too large. For a mandelbrot set both orbits are the same orbit, for a julia set they are not.
+ */
+
+public class ReferenceOrbit {
+
+	private final int escapetreshold = 4;
+
+	private double [] orbitreal, orbitimaginary;
+	private int primaryend, rebasestart, rebaseend;
+
+	//the values the current orbit was calculated with, so it can be reused between frames
+	private BigDecimal previousx, previousy;
+	private boolean previousjulia;
+	private double previousjuliareal, previousjuliaimaginary;
+	private int previousiterations, previousprecision;
+
+	//stores how long the last calculation took
+	private int timetocalculate;
+
+	public ReferenceOrbit(){
+
+		orbitreal = new double[0];
+		orbitimaginary = new double[0];
+	}
+
+	/**
+	 * Calculates the orbit for the given center with enough digits for the magnification.
+	 * Nothing is recalculated if the orbit already belongs to the same values
+	 */
+	public void calculate(BigDecimal x, BigDecimal y, boolean renderjuliaset, double juliareal, double juliaimaginary, int iterations, double magnification){
+
+		//the digits of the pixel spacing plus enough digits to keep the orbit accurate
+		int precision = 20 + (int) Math.max(0, Math.log10(magnification));
+
+		if(x.equals(previousx) && y.equals(previousy) && renderjuliaset == previousjulia && juliareal == previousjuliareal
+				&& juliaimaginary == previousjuliaimaginary && iterations == previousiterations && precision == previousprecision){
+			timetocalculate = 0;
+			return;
+		}
+
+		long starttime = System.currentTimeMillis();
+		MathContext mc = new MathContext(precision);
+
+		//an orbit can be at most this long, plus its starting value
+		double [] real = new double[2 * (iterations + 2)];
+		double [] imaginary = new double[2 * (iterations + 2)];
+
+		int length;
+
+		if(renderjuliaset){
+			BigDecimal cr = new BigDecimal(juliareal);
+			BigDecimal ci = new BigDecimal(juliaimaginary);
+
+			//the julia set starts on the picture center and rebases to the orbit of 0
+			length = iterate(x, y, cr, ci, real, imaginary, 0, iterations, mc);
+			primaryend = length - 1;
+			rebasestart = length;
+			length += iterate(BigDecimal.ZERO, BigDecimal.ZERO, cr, ci, real, imaginary, length, iterations, mc);
+			rebaseend = length - 1;
+		}
+
+		else{
+			//for the mandelbrot set the orbit of 0 is the orbit of the picture center
+			length = iterate(BigDecimal.ZERO, BigDecimal.ZERO, x, y, real, imaginary, 0, iterations + 1, mc);
+			primaryend = length - 1;
+			rebasestart = 0;
+			rebaseend = primaryend;
+		}
+
+		orbitreal = new double[length];
+		orbitimaginary = new double[length];
+		System.arraycopy(real, 0, orbitreal, 0, length);
+		System.arraycopy(imaginary, 0, orbitimaginary, 0, length);
+
+		previousx = x;
+		previousy = y;
+		previousjulia = renderjuliaset;
+		previousjuliareal = juliareal;
+		previousjuliaimaginary = juliaimaginary;
+		previousiterations = iterations;
+		previousprecision = precision;
+
+		timetocalculate = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Iterates z = z^2 + c from the start value and stores every value from index offset and forward.
+	 * Stops after the value that escapes the treshold and returns how many values were stored
+	 */
+	private int iterate(BigDecimal zreal, BigDecimal zimag, BigDecimal creal, BigDecimal cimag, double [] real, double [] imaginary, int offset, int iterations, MathContext mc){
+
+		int i = 0;
+
+		while(i <= iterations){
+
+			real[offset + i] = zreal.doubleValue();
+			imaginary[offset + i] = zimag.doubleValue();
+			i++;
+
+			if(real[offset + i - 1] * real[offset + i - 1] + imaginary[offset + i - 1] * imaginary[offset + i - 1] >= escapetreshold){
+				break;
+			}
+
+			BigDecimal zrealtemp = zreal.multiply(zreal, mc).subtract(zimag.multiply(zimag, mc), mc).add(creal, mc);
+			zimag = zreal.multiply(zimag, mc).multiply(BigDecimal.valueOf(2), mc).add(cimag, mc);
+			zreal = zrealtemp;
+		}
+
+		return i;
+	}
+
+	/**
+	 * Returns the real part of the stored orbit
+	 */
+	public double [] getOrbitReal(){
+		return orbitreal;
+	}
+
+	/**
+	 * Returns the imaginary part of the stored orbit
+	 */
+	public double [] getOrbitImaginary(){
+		return orbitimaginary;
+	}
+
+	/**
+	 * Returns the index of the last value in the primary orbit
+	 */
+	public int getPrimaryEnd(){
+		return primaryend;
+	}
+
+	/**
+	 * Returns the index where the rebase orbit starts
+	 */
+	public int getRebaseStart(){
+		return rebasestart;
+	}
+
+	/**
+	 * Returns the index of the last value in the rebase orbit
+	 */
+	public int getRebaseEnd(){
+		return rebaseend;
+	}
+
+	/**
+	 * Returns how long the last calculation of the orbit took in ms
+	 */
+	public int getTimetocalculate(){
+		return timetocalculate;
+	}
+}
@@ -0,0 +1,277 @@
+package mandelbrot;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Renders a fixed catalogue of views at a few sizes and antialiasing rates without a window, and checks both that
+ * every frame still looks the same and that the frames are not slower than before. The checksum of every frame is
+ * compared with the golden checksums in resources/golden.properties, where a frame without one fails until it is
+ * recorded, and the time, Mpixels/s and total iterations of every frame are written to a CSV report.
+ *
+ * A report from an earlier run can be given as the baseline, the run then fails if the frames are on average slower
+ * than the baseline by more than the tolerance. The frames are calculated on the CPU so that every machine gets
+ * the same checksums.
+ *
+ * Usage: RegressionSuite [--record] [--golden file] [--report file] [--baseline file] [--tolerance percent] [--runs n]
+ * where --record writes the checksums of this run as the new golden checksums.
+ */
+
+public class RegressionSuite {
+
+	/**
+	 * The views of the catalogue, with their centers in the set
+	 */
+	public enum Viewpoint {
+		Default("0", "0", 1, false),
+		SeahorseValley("-0.743643887037151", "0.131825904205330", 5000, false),
+		ElephantValley("0.282", "0.01", 200, false),
+		JuliaDendrite("0", "0", 1.5, true),
+		DoubleDoubleZoom("0", "1", 1e20, false),
+		PerturbationZoom("0", "1", 1e40, false);
+
+		private final String x, y;
+		private final double magnification;
+		private final boolean julia;
+
+		private Viewpoint(String x, String y, double magnification, boolean julia){
+			this.x = x;
+			this.y = y;
+			this.magnification = magnification;
+			this.julia = julia;
+		}
+	}
+
+	private static final int [][] Sizes = {{160, 120}, {320, 240}};
+	private static final int [] Antialiasing = {1, 4};
+
+	private static final String header = "case,width,height,antialiasing,checksum,golden,ms,mpixelspersecond,iterations";
+
+	private File golden, report, baseline;
+	private double tolerance;
+	private int runs;
+	private boolean record;
+
+	public RegressionSuite(){
+		golden = new File("resources/golden.properties");
+		report = new File("regression-report.csv");
+		baseline = null;
+		tolerance = 10;
+		runs = 3;
+		record = false;
+	}
+
+	/**
+	 * Runs the suite from the command line, and exits with 1 if a frame changed or the frames got slower
+	 */
+	public static void main(String [] args) throws IOException{
+
+		RegressionSuite suite = new RegressionSuite();
+
+		for(int i = 0; i < args.length; i++){
+
+			switch(args[i]){
+			case "--record": suite.record = true; break;
+			case "--golden": suite.golden = new File(args[++i]); break;
+			case "--report": suite.report = new File(args[++i]); break;
+			case "--baseline": suite.baseline = new File(args[++i]); break;
+			case "--tolerance": suite.tolerance = Double.parseDouble(args[++i]); break;
+			case "--runs": suite.runs = Integer.parseInt(args[++i]); break;
+			default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+			}
+		}
+
+		if(!suite.run()){
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Renders every case, writes the report and compares it with the golden checksums and the baseline.
+	 * Returns false if a frame changed or has no golden checksum, or the frames are slower than the baseline allows
+	 */
+	public boolean run() throws IOException{
+
+		Properties Golden = new Properties();
+
+		if(golden.exists()){
+			try(FileReader reader = new FileReader(golden)){
+				Golden.load(reader);
+			}
+		}
+
+		Map<String, Double> Baseline = baseline != null ? readThroughput(baseline) : new HashMap<String, Double>();
+		Map<String, String> Checksums = new TreeMap<String, String>();
+
+		boolean passed = true;
+		double logratios = 0;
+		int compared = 0;
+
+		try(PrintWriter out = new PrintWriter(new FileWriter(report))){
+
+			out.println(header);
+
+			for(Viewpoint view : Viewpoint.values()){
+				for(int [] Size : Sizes){
+					for(int aa : Antialiasing){
+
+						String name = view + "-" + Size[0] + "x" + Size[1] + "-aa" + aa;
+						Result result = render(view, Size[0], Size[1], aa);
+						String expected = Golden.getProperty(name);
+
+						out.println(name + "," + Size[0] + "," + Size[1] + "," + aa + "," + result.checksum + ","
+								+ (expected != null ? expected : "") + "," + result.milliseconds + ","
+								+ result.mpixelspersecond + "," + result.iterations);
+
+						Checksums.put(name, result.checksum);
+
+						String status = "ok";
+
+						//a case without a golden checksum is not checked, so it has to be recorded first
+						if(!record && expected == null){
+							status = "MISSING, record it with --record";
+							passed = false;
+						}
+
+						else if(!record && !expected.equals(result.checksum)){
+							status = "CHANGED, golden " + expected;
+							passed = false;
+						}
+
+						if(Baseline.containsKey(name)){
+							logratios += Math.log(result.mpixelspersecond / Baseline.get(name));
+							compared++;
+						}
+
+						System.out.printf("%-36s %9.2f ms %9.3f Mpixels/s %14d iterations  %s%n", name, result.milliseconds,
+								result.mpixelspersecond, result.iterations, status);
+					}
+				}
+			}
+		}
+
+		if(record){
+			writeGolden(Checksums);
+			System.out.println("Recorded " + Checksums.size() + " golden checksums in " + golden);
+		}
+
+		//the geometric mean of the speedups, so a fast and a slow case weigh the same
+		if(compared > 0){
+
+			double speedup = Math.exp(logratios / compared);
+			System.out.printf("Throughput is %.1f%% of the baseline over %d cases%n", 100 * speedup, compared);
+
+			if(speedup < 1 - tolerance / 100){
+				System.out.println("FAILED: the throughput regressed by more than " + tolerance + "%");
+				passed = false;
+			}
+		}
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+
+		return passed;
+	}
+
+	/**
+	 * The outcome of one case
+	 */
+	private static class Result {
+		private String checksum;
+		private double milliseconds, mpixelspersecond;
+		private long iterations;
+	}
+
+	/**
+	 * Renders one case a few times and keeps the fastest time, the checksum is the CRC32 of the colored pixels
+	 */
+	private Result render(Viewpoint view, int w, int h, int aa){
+
+		MandelbrotGenerator generator = new MandelbrotGenerator(w, h);
+		generator.enableGPU(false);
+		generator.setCurrentAntialiasing(aa);
+		generator.setMagnification(view.magnification);
+		generator.setRenderJuliaSet(view.julia);
+		generator.setJuliaValues(0, 1);
+
+		//the y coordinate of MandelbrotGenerator is scaled by the picture ratio, with enough digits for the magnification
+		MathContext context = new MathContext(20 + (int) Math.max(0, Math.log10(view.magnification)));
+		BigDecimal x = new BigDecimal(view.x);
+		BigDecimal y = new BigDecimal(view.y).multiply(BigDecimal.valueOf(w)).divide(BigDecimal.valueOf(h), context);
+
+		long fastest = Long.MAX_VALUE;
+
+		for(int i = 0; i < runs; i++){
+
+			//moving to the view makes the generator calculate it again
+			generator.setCoordinates(x, y);
+
+			long starttime = System.nanoTime();
+			generator.calculate();
+			fastest = Math.min(fastest, System.nanoTime() - starttime);
+		}
+
+		CRC32 crc = new CRC32();
+
+		for(int pixel : generator.getMandelbrot()){
+			crc.update(pixel >> 16);
+			crc.update(pixel >> 8);
+			crc.update(pixel);
+		}
+
+		Result result = new Result();
+		result.checksum = String.format("%08x", crc.getValue());
+		result.milliseconds = fastest / 1e6;
+		result.mpixelspersecond = (double) w * h / (fastest / 1e3);
+		result.iterations = 0;
+
+		//samples inside the set took every iteration
+		for(float iterations : generator.getIterationsUpscaled()){
+			result.iterations += iterations < 0 ? (long) generator.getIterationLimit() : (long) iterations;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reads the Mpixels/s of every case from a report
+	 */
+	private static Map<String, Double> readThroughput(File file) throws IOException{
+
+		Map<String, Double> Throughput = new HashMap<String, Double>();
+		List<String> Lines = Files.readAllLines(file.toPath());
+
+		for(String line : Lines.subList(1, Lines.size())){
+
+			String [] Fields = line.split(",", -1);
+			Throughput.put(Fields[0], Double.parseDouble(Fields[7]));
+		}
+
+		return Throughput;
+	}
+
+	/**
+	 * Writes the checksums as the new golden checksums, sorted so the file changes as little as possible
+	 */
+	private void writeGolden(Map<String, String> Checksums) throws IOException{
+
+		try(PrintWriter out = new PrintWriter(new FileWriter(golden))){
+
+			out.println("# CRC32 of the colored pixels of every case of RegressionSuite, written with --record");
+
+			for(Map.Entry<String, String> checksum : Checksums.entrySet()){
+				out.println(checksum.getKey() + "=" + checksum.getValue());
+			}
+		}
+	}
+}
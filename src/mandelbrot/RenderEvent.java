@@ -0,0 +1,81 @@
+package mandelbrot;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields every Java Flight Recorder event of a frame has: the view, the settings and the work that was done.
+ * The events cost next to nothing unless a recording is running, for example one started with
+ * -XX:StartFlightRecording, and can then explain a slow frame after the fact
+ */
+
+@Category("Mandelbrot")
+@StackTrace(false)
+public abstract class RenderEvent extends Event {
+
+	@Label("Center X")
+	protected double x;
+
+	@Label("Center Y")
+	protected double y;
+
+	@Label("Width")
+	protected int width;
+
+	@Label("Height")
+	protected int height;
+
+	@Label("Magnification")
+	protected double magnification;
+
+	@Label("Antialiasing")
+	protected int antialiasing;
+
+	@Label("Detail")
+	protected int detail;
+
+	@Label("Range Size")
+	protected long range;
+
+	@Label("Execution Mode")
+	protected String executionmode;
+
+	@Label("Iterations")
+	protected long iterations;
+
+	/**
+	 * Copies the view and the settings of the generator into the event
+	 */
+	public void setView(MandelbrotGenerator generator){
+		x = generator.getXCenter();
+		y = generator.getYCenter();
+		width = generator.getWidth();
+		height = generator.getHeight();
+		magnification = generator.getMagnification();
+		antialiasing = generator.getCurrentAntialiasing();
+		detail = generator.getImageDetail();
+	}
+
+	/**
+	 * Copies the view and the settings a published frame was calculated with into the event
+	 */
+	public void setView(RenderService.Settings settings){
+		x = settings.getXCenter();
+		y = settings.getYCenter();
+		width = settings.getWidth();
+		height = settings.getHeight();
+		magnification = settings.getMagnification();
+		antialiasing = settings.getCurrentAntialiasing();
+		detail = settings.getImageDetail();
+	}
+
+	/**
+	 * Sets how many samples the work covered, the execution mode it ran in and how many iterations it took
+	 */
+	public void setWork(long samples, GPUKernel.EXECUTION_MODE mode, long iterations){
+		range = samples;
+		executionmode = mode != null ? mode.toString() : null;
+		this.iterations = iterations;
+	}
+}
@@ -0,0 +1,362 @@
+package mandelbrot;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the times of the recent frames of a MandelbrotGenerator for every stage of a frame, so a long running
+ * render can be watched over JMX, for example with jconsole. Every stage keeps the last frames in a ring, from
+ * which a histogram of the frame times and its percentiles are taken when they are read.
+ *
+ * MandelbrotGenerator records the iterate and antialias stages itself, whatever draws the picture records the
+ * publish, raster copy and paint stages. The metrics are only visible over JMX once they are registered.
+ */
+
+public class RenderMetrics implements RenderMetricsMXBean {
+
+	/**
+	 * The stages of a frame that are timed, Publish is the copy of a finished frame by RenderService
+	 */
+	public enum Stage {
+		Iterate, Antialias, Publish, RasterCopy, Paint
+	}
+
+	//how many of the last frames every stage keeps
+	private final int window = 256;
+
+	//the upper bounds of the buckets of the histograms in milliseconds, the last bucket has no bound
+	private static final double [] Buckets = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+
+	private MandelbrotGenerator generator;
+	private Ring [] Rings;
+	private String iteratemode, antialiasmode;
+	private ObjectName name;
+
+	public RenderMetrics(MandelbrotGenerator generator){
+
+		this.generator = generator;
+		Rings = new Ring[Stage.values().length];
+
+		for(int i = 0; i < Rings.length; i++){
+			Rings[i] = new Ring(window);
+		}
+
+		iteratemode = "NONE";
+		antialiasmode = "NONE";
+	}
+
+	/**
+	 * The last frames of a stage, with how many samples and iterations every frame had
+	 */
+	private static class Ring {
+
+		private long [] Times, Samples, Iterations;
+		private int next, size;
+		private long frames;
+
+		private Ring(int length){
+			Times = new long[length];
+			Samples = new long[length];
+			Iterations = new long[length];
+		}
+
+		private void add(long nanos, long samples, long iterations){
+			Times[next] = nanos;
+			Samples[next] = samples;
+			Iterations[next] = iterations;
+			next = (next + 1) % Times.length;
+			size = Math.min(size + 1, Times.length);
+			frames++;
+		}
+	}
+
+	/**
+	 * The times of the recent frames of one stage. The percentiles and histogram only cover the frames still in
+	 * the window, the frames are counted since the metrics were created or reset
+	 */
+	public static class StageTimes {
+
+		private long frames;
+		private int window;
+		private double mean, median, percentile95, percentile99, maximum;
+		private long [] Histogram;
+
+		private StageTimes(Ring ring){
+
+			long [] Sorted = Arrays.copyOf(ring.Times, ring.size);
+			Arrays.sort(Sorted);
+
+			frames = ring.frames;
+			window = ring.size;
+			Histogram = new long[Buckets.length + 1];
+
+			for(long time : Sorted){
+
+				int bucket = 0;
+
+				while(bucket < Buckets.length && time / 1e6 > Buckets[bucket]){
+					bucket++;
+				}
+
+				Histogram[bucket]++;
+				mean += time / 1e6 / Sorted.length;
+			}
+
+			if(Sorted.length > 0){
+				median = Sorted[(Sorted.length - 1) / 2] / 1e6;
+				percentile95 = Sorted[(int) Math.ceil(0.95 * Sorted.length) - 1] / 1e6;
+				percentile99 = Sorted[(int) Math.ceil(0.99 * Sorted.length) - 1] / 1e6;
+				maximum = Sorted[Sorted.length - 1] / 1e6;
+			}
+		}
+
+		/**
+		 * Returns how many frames the stage has had
+		 */
+		public long getFrames(){
+			return frames;
+		}
+
+		/**
+		 * Returns how many of the last frames the times are taken from
+		 */
+		public int getWindow(){
+			return window;
+		}
+
+		/**
+		 * Returns the mean time in milliseconds
+		 */
+		public double getMean(){
+			return mean;
+		}
+
+		/**
+		 * Returns the median time in milliseconds
+		 */
+		public double getMedian(){
+			return median;
+		}
+
+		/**
+		 * Returns the time in milliseconds 95% of the frames were faster than or as fast as
+		 */
+		public double getPercentile95(){
+			return percentile95;
+		}
+
+		/**
+		 * Returns the time in milliseconds 99% of the frames were faster than or as fast as
+		 */
+		public double getPercentile99(){
+			return percentile99;
+		}
+
+		/**
+		 * Returns the longest time in milliseconds
+		 */
+		public double getMaximum(){
+			return maximum;
+		}
+
+		/**
+		 * Returns how many frames took up to each of the bucket bounds, and in the last bucket longer than all of them
+		 */
+		public long [] getHistogram(){
+			return Histogram.clone();
+		}
+
+		/**
+		 * Returns the upper bounds of the buckets of the histogram in milliseconds
+		 */
+		public double [] getBucketBounds(){
+			return Buckets.clone();
+		}
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as mandelbrot:type=RenderMetrics,name=<name>, so they can be
+	 * read over JMX, instead of any name they had. Returns false if they could not be registered, such as when the
+	 * name is already taken
+	 */
+	public synchronized boolean register(String name){
+
+		//the metrics can only be registered under one name at a time
+		unregister();
+
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectname = new ObjectName("mandelbrot:type=RenderMetrics,name=" + ObjectName.quote(name));
+
+			server.registerMBean(this, objectname);
+			this.name = objectname;
+
+			return true;
+		}
+		catch(JMException e){
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server if they are registered
+	 */
+	public synchronized void unregister(){
+
+		if(name == null){
+			return;
+		}
+
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+		catch(JMException e){
+			//it has already been removed
+		}
+
+		name = null;
+	}
+
+	/**
+	 * Records how long a stage took for one frame in nanoseconds
+	 */
+	public void record(Stage stage, long nanos){
+		record(stage, nanos, 0, 0);
+	}
+
+	/**
+	 * Records how long a stage took for one frame in nanoseconds, and how many samples it calculated with how many
+	 * iterations in total
+	 */
+	public synchronized void record(Stage stage, long nanos, long samples, long iterations){
+		Rings[stage.ordinal()].add(nanos, samples, iterations);
+	}
+
+	/**
+	 * Records the execution mode a stage actually ran in during the last frame, only iterate and antialias have one
+	 */
+	public synchronized void setExecutionMode(Stage stage, GPUKernel.EXECUTION_MODE mode){
+
+		if(stage == Stage.Iterate){
+			iteratemode = mode.toString();
+		}
+
+		else if(stage == Stage.Antialias){
+			antialiasmode = mode.toString();
+		}
+	}
+
+	/**
+	 * Returns the times of the recent frames of a stage
+	 */
+	public synchronized StageTimes getTimes(Stage stage){
+		return new StageTimes(Rings[stage.ordinal()]);
+	}
+
+	@Override
+	public StageTimes getIterateTimes(){
+		return getTimes(Stage.Iterate);
+	}
+
+	@Override
+	public StageTimes getAntialiasTimes(){
+		return getTimes(Stage.Antialias);
+	}
+
+	@Override
+	public StageTimes getPublishTimes(){
+		return getTimes(Stage.Publish);
+	}
+
+	@Override
+	public StageTimes getRasterCopyTimes(){
+		return getTimes(Stage.RasterCopy);
+	}
+
+	@Override
+	public StageTimes getPaintTimes(){
+		return getTimes(Stage.Paint);
+	}
+
+	@Override
+	public synchronized double getPixelsPerSecond(){
+		return getRate(Rings[Stage.Iterate.ordinal()].Samples);
+	}
+
+	@Override
+	public synchronized double getIterationsPerSecond(){
+		return getRate(Rings[Stage.Iterate.ordinal()].Iterations);
+	}
+
+	/**
+	 * Returns the sum of the counts of the iterations in the window divided by their time in seconds
+	 */
+	private double getRate(long [] Counts){
+
+		Ring ring = Rings[Stage.Iterate.ordinal()];
+		long count = 0, nanos = 0;
+
+		for(int i = 0; i < ring.size; i++){
+			count += Counts[i];
+			nanos += ring.Times[i];
+		}
+
+		return nanos > 0 ? count / (nanos / 1e9) : 0;
+	}
+
+	@Override
+	public synchronized String getIterateExecutionMode(){
+		return iteratemode;
+	}
+
+	@Override
+	public synchronized String getAntialiasExecutionMode(){
+		return antialiasmode;
+	}
+
+	@Override
+	public int getWidth(){
+		return generator.getWidth();
+	}
+
+	@Override
+	public int getHeight(){
+		return generator.getHeight();
+	}
+
+	@Override
+	public long getIterationBufferBytes(){
+		return 4L * generator.getIterationsUpscaled().length;
+	}
+
+	@Override
+	public long getPictureBufferBytes(){
+		return 4L * generator.getMandelbrot().length;
+	}
+
+	@Override
+	public int getAntialiasing(){
+		return generator.getCurrentAntialiasing();
+	}
+
+	@Override
+	public int getImageDetail(){
+		return generator.getImageDetail();
+	}
+
+	@Override
+	public double getMagnification(){
+		return generator.getMagnification();
+	}
+
+	@Override
+	public synchronized void reset(){
+
+		for(int i = 0; i < Rings.length; i++){
+			Rings[i] = new Ring(window);
+		}
+	}
+}
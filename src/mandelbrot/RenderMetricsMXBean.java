@@ -0,0 +1,93 @@
+package mandelbrot;
+
+/**
+ * The render metrics of a MandelbrotGenerator as they are seen over JMX, see RenderMetrics
+ */
+
+public interface RenderMetricsMXBean {
+
+	/**
+	 * Returns the times of the recent iterations of the upscaled picture
+	 */
+	public RenderMetrics.StageTimes getIterateTimes();
+
+	/**
+	 * Returns the times of the recent antialiasing and coloring of the picture
+	 */
+	public RenderMetrics.StageTimes getAntialiasTimes();
+
+	/**
+	 * Returns the times of the recent copies of finished frames for the painting thread
+	 */
+	public RenderMetrics.StageTimes getPublishTimes();
+
+	/**
+	 * Returns the times of the recent copies of the picture to the screen
+	 */
+	public RenderMetrics.StageTimes getRasterCopyTimes();
+
+	/**
+	 * Returns the times of the recent paints of the canvas, with the overlay and the copy
+	 */
+	public RenderMetrics.StageTimes getPaintTimes();
+
+	/**
+	 * Returns how many upscaled samples were calculated per second over the recent iterations
+	 */
+	public double getPixelsPerSecond();
+
+	/**
+	 * Returns how many iterations the samples of the recent frames took per second of iterating
+	 */
+	public double getIterationsPerSecond();
+
+	/**
+	 * Returns the execution mode the last iterations actually ran in
+	 */
+	public String getIterateExecutionMode();
+
+	/**
+	 * Returns the execution mode the last antialiasing actually ran in
+	 */
+	public String getAntialiasExecutionMode();
+
+	/**
+	 * Returns the width of the picture in pixels
+	 */
+	public int getWidth();
+
+	/**
+	 * Returns the height of the picture in pixels
+	 */
+	public int getHeight();
+
+	/**
+	 * Returns the bytes of the upscaled iterations
+	 */
+	public long getIterationBufferBytes();
+
+	/**
+	 * Returns the bytes of the colored picture
+	 */
+	public long getPictureBufferBytes();
+
+	/**
+	 * Returns the number of samples per pixel
+	 */
+	public int getAntialiasing();
+
+	/**
+	 * Returns the image detail
+	 */
+	public int getImageDetail();
+
+	/**
+	 * Returns the magnification
+	 */
+	public double getMagnification();
+
+	/**
+	 * Forgets the recorded times
+	 */
+	public void reset();
+}
@@ -0,0 +1,404 @@
+package mandelbrot;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Calculates the frames of a MandelbrotGenerator on a thread of its own, so the thread that paints never waits for
+ * a frame. Only the render thread uses the generator: every change to it is sent as a job, and the jobs are run
+ * in the order they were sent. A job that is sent while a frame is being calculated cancels that frame at the next
+ * tile (see TileRenderer), and the frame is only calculated once with all the jobs that have been sent since. Jobs
+ * that animate, such as a zoom, skip the frames that are left once another job is waiting.
+ *
+ * Finished frames are handed to the painting thread through three pictures without a lock: the generator colors
+ * a frame straight into the picture of the render thread, which swaps it with the newest picture and makes the
+ * picture it got back the output of the generator, and the painting thread swaps its picture with the newest one
+ * when that is newer than its own. The settings a frame was calculated with are handed over with it, so the
+ * painting thread never reads the generator.
+ */
+
+public class RenderService {
+
+	/**
+	 * A change to the generator that is run on the render thread
+	 */
+	public interface Job {
+
+		/**
+		 * Changes the generator, and can calculate and publish the frames of an animation. Once the service is
+		 * superseded the job should skip its frames and leave the generator as it would be after the last one
+		 */
+		public void run(MandelbrotGenerator generator);
+	}
+
+	/**
+	 * Moves the view, the moves that wait are added together into one
+	 */
+	private static class Pan implements Job {
+
+		private int dx, dy;
+
+		private Pan(int dx, int dy){
+			this.dx = dx;
+			this.dy = dy;
+		}
+
+		@Override
+		public void run(MandelbrotGenerator generator){
+			generator.pan(dx, dy);
+		}
+	}
+
+	/**
+	 * The settings of the generator a frame was calculated with, taken on the render thread when it was published
+	 */
+	public static class Settings {
+
+		private final int width, height, antialiasing, imagedetail, timetorender;
+		private final boolean adaptiveantialiasing, gpu;
+		private final double magnification, xcenter, ycenter;
+
+		private Settings(MandelbrotGenerator generator){
+			width = generator.getWidth();
+			height = generator.getHeight();
+			antialiasing = generator.getCurrentAntialiasing();
+			imagedetail = generator.getImageDetail();
+			adaptiveantialiasing = generator.adaptiveAntialiasingIsEnabled();
+			timetorender = generator.getTimetorender();
+			magnification = generator.getMagnification();
+			xcenter = generator.getXCenter();
+			ycenter = generator.getYCenter();
+			gpu = generator.GPUisenabled();
+		}
+
+		/**
+		 * Returns the width of the frame
+		 */
+		public int getWidth(){
+			return width;
+		}
+
+		/**
+		 * Returns the height of the frame
+		 */
+		public int getHeight(){
+			return height;
+		}
+
+		/**
+		 * Returns the antialiasing of the frame
+		 */
+		public int getCurrentAntialiasing(){
+			return antialiasing;
+		}
+
+		/**
+		 * Returns the image detail of the frame
+		 */
+		public int getImageDetail(){
+			return imagedetail;
+		}
+
+		/**
+		 * Returns whether the frame was antialiased adaptively
+		 */
+		public boolean adaptiveAntialiasingIsEnabled(){
+			return adaptiveantialiasing;
+		}
+
+		/**
+		 * Returns the time it took to render the frame
+		 */
+		public int getTimetorender(){
+			return timetorender;
+		}
+
+		/**
+		 * Returns the magnification of the frame
+		 */
+		public double getMagnification(){
+			return magnification;
+		}
+
+		/**
+		 * Returns the x coordinate of the center of the frame
+		 */
+		public double getXCenter(){
+			return xcenter;
+		}
+
+		/**
+		 * Returns the y coordinate of the center of the frame
+		 */
+		public double getYCenter(){
+			return ycenter;
+		}
+
+		/**
+		 * Returns whether the frame was calculated on the GPU
+		 */
+		public boolean GPUisenabled(){
+			return gpu;
+		}
+	}
+
+	/**
+	 * A picture, the settings it was calculated with and whether the painting thread has not had it yet
+	 */
+	private static class Picture {
+
+		private final BufferedImage image;
+		private final Settings settings;
+		private final boolean fresh;
+
+		private Picture(BufferedImage image, Settings settings, boolean fresh){
+			this.image = image;
+			this.settings = settings;
+			this.fresh = fresh;
+		}
+	}
+
+	private MandelbrotGenerator generator;
+	private Thread thread;
+	private volatile Runnable listener;
+
+	//the jobs that have not been started, guarded by the service
+	private ArrayDeque<Job> Jobs;
+
+	//the frame that is calculated can be cancelled unless it only moves the view, so a drag is never cancelled by the next move
+	private boolean cancellable;
+
+	//the picture the generator colors frames into, the picture that is painted, and the newest picture between them
+	private BufferedImage back;
+	private Picture front;
+	private final AtomicReference<Picture> newest;
+
+	private volatile long publishedframes, cancelledframes;
+
+	public RenderService(MandelbrotGenerator generator){
+
+		this.generator = generator;
+		Jobs = new ArrayDeque<Job>();
+		listener = () -> {};
+
+		back = createPicture();
+		front = new Picture(createPicture(), new Settings(generator), false);
+		newest = new AtomicReference<Picture>(new Picture(createPicture(), front.settings, false));
+
+		//the render thread is not started yet, so the generator can still be changed here
+		generator.setOutput(getData(back));
+
+		thread = new Thread(this::loop, "Render");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Sends a job to the render thread and cancels the frame it is calculating, a frame of the current settings
+	 * is published once all the jobs that wait have been run
+	 */
+	public void submit(Job job){
+
+		synchronized(this){
+			Jobs.add(job);
+			generator.setCancelled(true);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Sends a move of the view by a number of pixels, see MandelbrotGenerator.pan(). It is added to the move that
+	 * waits if there is one, and it only cancels a frame that is not a move
+	 */
+	public void pan(int dx, int dy){
+
+		synchronized(this){
+
+			if(Jobs.peekLast() instanceof Pan){
+				((Pan) Jobs.peekLast()).dx += dx;
+				((Pan) Jobs.peekLast()).dy += dy;
+				return;
+			}
+
+			Jobs.add(new Pan(dx, dy));
+
+			if(cancellable){
+				generator.setCancelled(true);
+			}
+
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns true if a job is waiting, so the job that runs should skip the rest of its frames
+	 */
+	public synchronized boolean isSuperseded(){
+		return !Jobs.isEmpty();
+	}
+
+	/**
+	 * Runs the jobs as they come and publishes a frame after each batch of them
+	 */
+	private void loop(){
+
+		List<Job> Batch = new ArrayList<Job>();
+
+		while(!Thread.currentThread().isInterrupted()){
+
+			synchronized(this){
+
+				while(Jobs.isEmpty()){
+					try{
+						wait();
+					}
+					catch(InterruptedException e){
+						return;
+					}
+				}
+
+				//the jobs are only sent while the service is locked, so a cancel after this is meant for the jobs taken here
+				generator.setCancelled(false);
+				cancellable = false;
+
+				while(!Jobs.isEmpty()){
+					Job job = Jobs.poll();
+					cancellable |= !(job instanceof Pan);
+					Batch.add(job);
+				}
+			}
+
+			try{
+				for(Job job : Batch){
+					job.run(generator);
+				}
+
+				if(generator.isOutdated()){
+					generator.calculate();
+				}
+
+				if(!publish()){
+					cancelledframes++;
+				}
+			}
+			catch(RuntimeException e){
+				//a job that fails must not stop the frames after it
+				e.printStackTrace();
+			}
+
+			Batch.clear();
+		}
+	}
+
+	/**
+	 * Hands the picture of the generator to the painting thread and tells the listener, unless the frame was
+	 * cancelled. Only the render thread may call it, jobs call it for the frames of their animations.
+	 * Returns false if the frame was cancelled
+	 */
+	public boolean publish(){
+
+		if(generator.isCancelled()){
+			return false;
+		}
+
+		long starttime = System.nanoTime();
+		StageEvent event = new StageEvent(RenderMetrics.Stage.Publish);
+		event.begin();
+
+		int [] Pixels = generator.getMandelbrot();
+
+		//the generator colors into a picture of its own after it changed size, that frame is the only one copied
+		if(Pixels != getData(back)){
+			back = createPicture();
+			System.arraycopy(Pixels, 0, getData(back), 0, Pixels.length);
+		}
+
+		back = newest.getAndSet(new Picture(back, new Settings(generator), true)).image;
+		publishedframes++;
+
+		if(back.getWidth() != generator.getWidth() || back.getHeight() != generator.getHeight()){
+			back = createPicture();
+		}
+
+		//the picture that was just published is left alone, the generator moves its colors when it pans
+		generator.setOutput(getData(back));
+
+		generator.getMetrics().record(RenderMetrics.Stage.Publish, System.nanoTime() - starttime);
+
+		if(event.shouldCommit()){
+			event.setView(generator);
+			event.setWork(Pixels.length, null, 0);
+			event.commit();
+		}
+
+		listener.run();
+
+		return true;
+	}
+
+	/**
+	 * Returns the newest finished frame. The picture belongs to the painting thread until the next call, only one
+	 * thread may call it
+	 */
+	public BufferedImage getFrame(){
+
+		if(newest.get().fresh){
+			front = newest.getAndSet(new Picture(front.image, front.settings, false));
+		}
+
+		return front.image;
+	}
+
+	/**
+	 * Returns the settings the frame that getFrame() returned last was calculated with, only the thread that calls
+	 * getFrame() may call it
+	 */
+	public Settings getSettings(){
+		return front.settings;
+	}
+
+	/**
+	 * Returns the pixels of a picture
+	 */
+	private static int [] getData(BufferedImage picture){
+		return ((DataBufferInt) picture.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Returns a black picture the size of the generator
+	 */
+	private BufferedImage createPicture(){
+		return new BufferedImage(generator.getWidth(), generator.getHeight(), BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Sets what is run on the render thread every time a frame is published, such as a repaint
+	 */
+	public void setListener(Runnable r){
+		listener = r;
+	}
+
+	/**
+	 * Returns how many frames have been published
+	 */
+	public long getPublishedFrames(){
+		return publishedframes;
+	}
+
+	/**
+	 * Returns how many frames were cancelled before they were published
+	 */
+	public long getCancelledFrames(){
+		return cancelledframes;
+	}
+
+	/**
+	 * Stops the render thread after the job it runs, the jobs that wait are dropped
+	 */
+	public void shutdown(){
+		thread.interrupt();
+	}
+}
@@ -0,0 +1,248 @@
+package mandelbrot;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders a frame that is close to the previous one by moving the iterations of the previous frame into the new view,
+ * so that a zoom only calculates the detail the previous frame does not have. Every sample is looked up at its
+ * position in the previous frame, and it is only calculated if that position is outside the previous frame, is on
+ * the edge of a band, or has been stretched over too many pixels by earlier frames.
+ *
+ * The stretch of every sample is kept from frame to frame, a sample that was calculated has a stretch of 1 and
+ * every zoom multiplies it, so the samples that were moved the most are the first to be calculated again.
+ * The rows are handed out to the threads by TileRenderer.
+ */
+
+public class ReprojectionRenderer {
+
+	//samples that cover more pixels than this in each direction are calculated again. The limit is up to twice as
+	//high depending on the row, so that the rows are not all calculated again in the same frame
+	private final double maximumstretch = 2;
+
+	private PixelKernel kernel;
+	private float [] IterationsUpscaled, Previous;
+	private float [] Stretch, PreviousStretch;
+	private int fullwidth, fullheight;
+	private boolean stored;
+
+	//the settings of the previous frame, the iterations can only be reused if they were calculated the same way
+	private int width, height, upscalingwidth, upscalingheight, imagedetail;
+	private boolean renderjuliaset, smoothcoloring;
+	private double juliavaluereal, juliavalueimaginary, magnification;
+	private BigDecimal xcenter, ycenter;
+
+	//the position in the previous frame of the first sample, and the distance between two samples in the previous frame
+	private double xshift, yshift, scale;
+
+	private LongAdder iteratedpixels;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public ReprojectionRenderer(){
+
+		Previous = new float[0];
+		Stretch = new float[0];
+		PreviousStretch = new float[0];
+		stored = false;
+		iteratedpixels = new LongAdder();
+	}
+
+	/**
+	 * Keeps the iterations of a frame that was calculated in full, with the settings and view of the kernel that owns them
+	 */
+	public void store(GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		syncSettings(settings, x, y);
+
+		if(PreviousStretch.length != fullwidth * fullheight){
+			PreviousStretch = new float[fullwidth * fullheight];
+		}
+
+		System.arraycopy(settings.getIterationsUpscaled(), 0, Previous, 0, Previous.length);
+		Arrays.fill(PreviousStretch, 1);
+	}
+
+	/**
+	 * Returns true if the kernel calculates the iterations the same way as the stored frame, so only the view differs
+	 */
+	public boolean canReproject(GPUKernel settings){
+
+		return stored && settings.getWidth() == width && settings.getHeight() == height
+				&& settings.getUpscalingWidth() == upscalingwidth && settings.getUpscalingHeight() == upscalingheight
+				&& settings.getImageDetail() == imagedetail && settings.getRenderJuliaSet() == renderjuliaset
+				&& settings.getJuliaValueReal() == juliavaluereal && settings.getJuliaValueImaginary() == juliavalueimaginary
+				&& settings.getSmoothColoring() == smoothcoloring;
+	}
+
+	/**
+	 * Renders the view of the kernel that owns the settings from the stored frame, and stores the result in its place.
+	 * The pixel kernel must already have the settings for the frame and the array must be cleared
+	 */
+	public void render(TileRenderer tiles, PixelKernel k, GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		long starttime = System.currentTimeMillis();
+
+		kernel = k;
+		IterationsUpscaled = settings.getIterationsUpscaled();
+
+		//the same conversion as in GPUKernel, solved for the position of a sample in the previous frame
+		scale = magnification / settings.getMagnification();
+		xshift = x.subtract(xcenter).doubleValue() * magnification * fullwidth / 4 + fullwidth / 2.0 * (1 - scale);
+		yshift = ycenter.subtract(y).doubleValue() * magnification * fullheight / 4 + fullheight / 2.0 * (1 - scale);
+
+		if(Stretch.length != fullwidth * fullheight){
+			Stretch = new float[fullwidth * fullheight];
+		}
+
+		iteratedpixels.reset();
+
+		tiles.render(new Rows(), fullwidth, fullheight);
+
+		float [] temp = PreviousStretch;
+		PreviousStretch = Stretch;
+		Stretch = temp;
+
+		syncSettings(settings, x, y);
+		System.arraycopy(IterationsUpscaled, 0, Previous, 0, Previous.length);
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Copies the settings and the view of the kernel
+	 */
+	private void syncSettings(GPUKernel settings, BigDecimal x, BigDecimal y){
+
+		width = settings.getWidth();
+		height = settings.getHeight();
+		upscalingwidth = settings.getUpscalingWidth();
+		upscalingheight = settings.getUpscalingHeight();
+		imagedetail = settings.getImageDetail();
+		renderjuliaset = settings.getRenderJuliaSet();
+		juliavaluereal = settings.getJuliaValueReal();
+		juliavalueimaginary = settings.getJuliaValueImaginary();
+		smoothcoloring = settings.getSmoothColoring();
+		magnification = settings.getMagnification();
+		xcenter = x;
+		ycenter = y;
+
+		fullwidth = width * upscalingwidth;
+		fullheight = height * upscalingheight;
+
+		if(Previous.length != fullwidth * fullheight){
+			Previous = new float[fullwidth * fullheight];
+		}
+
+		stored = true;
+	}
+
+	/**
+	 * Moves the samples of a tile from the previous frame, and calculates the ones that can not be moved a row at a time
+	 */
+	private class Rows implements PixelKernel{
+
+		public void calculatePixel(int x, int y){
+			calculateTile(x, y, x + 1, y + 1);
+		}
+
+		@Override
+		public void calculateTile(int left, int top, int right, int bottom){
+
+			for(int y = top; y < bottom; y++){
+
+				int ysource = (int) Math.floor(yshift + scale * y + 0.5);
+				int start = -1;
+
+				for(int x = left; x < right; x++){
+
+					int xsource = (int) Math.floor(xshift + scale * x + 0.5);
+
+					if(reproject(x, y, xsource, ysource)){
+
+						if(start >= 0){
+							calculate(start, y, x - start);
+							start = -1;
+						}
+					}
+					else if(start < 0){
+						start = x;
+					}
+				}
+
+				if(start >= 0){
+					calculate(start, y, right - start);
+				}
+			}
+		}
+
+		/**
+		 * Calculates a run of neighbouring samples
+		 */
+		private void calculate(int left, int y, int count){
+
+			kernel.calculateRow(left, y, count, 1);
+
+			for(int x = left; x < left + count; x++){
+				Stretch[y * fullwidth + x] = 1;
+			}
+
+			iteratedpixels.add(count);
+		}
+
+		/**
+		 * Copies the sample from its position in the previous frame and returns true, or returns false if it has to be calculated
+		 */
+		private boolean reproject(int x, int y, int xsource, int ysource){
+
+			if(xsource < 0 || xsource >= fullwidth || ysource < 0 || ysource >= fullheight){
+				return false;
+			}
+
+			int source = ysource * fullwidth + xsource;
+			float stretch = (float) (PreviousStretch[source] / scale);
+
+			if(stretch > maximumstretch * (1 + ((y * 5) & 7) / 8.0) || isEdge(xsource, ysource)){
+				return false;
+			}
+
+			IterationsUpscaled[y * fullwidth + x] = Previous[source];
+			Stretch[y * fullwidth + x] = stretch;
+
+			return true;
+		}
+
+		/**
+		 * Returns true if a neighbour of the sample in the previous frame escaped after another number of whole iterations
+		 */
+		private boolean isEdge(int x, int y){
+
+			int p = y * fullwidth + x;
+
+			return (x > 0 && !sameColor(p, p - 1)) || (x < fullwidth - 1 && !sameColor(p, p + 1))
+					|| (y > 0 && !sameColor(p, p - fullwidth)) || (y < fullheight - 1 && !sameColor(p, p + fullwidth));
+		}
+
+		/**
+		 * Returns true if both samples of the previous frame escaped after as many whole iterations
+		 */
+		private boolean sameColor(int p, int q){
+			return (int) Previous[p] == (int) Previous[q];
+		}
+	}
+
+	/**
+	 * Returns how many samples were calculated during the last frame, the rest were moved from the previous frame
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels.sum();
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
@@ -0,0 +1,31 @@
+package mandelbrot;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A stage of a frame (see RenderMetrics.Stage), from when it started until it was done
+ */
+
+@Name("mandelbrot.Stage")
+@Label("Render Stage")
+@Description("A stage of a frame of the Mandelbrot generator")
+public class StageEvent extends RenderEvent {
+
+	@Label("Stage")
+	private String stage;
+
+	@Label("Cancelled")
+	private boolean cancelled;
+
+	public StageEvent(RenderMetrics.Stage stage){
+		this.stage = stage.toString();
+	}
+
+	/**
+	 * Marks that the frame was cancelled during the stage, so the stage did not finish its work
+	 */
+	public void setCancelled(boolean b){
+		cancelled = b;
+	}
+}
@@ -0,0 +1,220 @@
+package mandelbrot;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders the upscaled picture with Mariani-Silver subdivision. Only the border of a rectangle is calculated,
+ * if every pixel on the border has the same color the whole rectangle gets that color without calculating
+ * the inside. Otherwise the rectangle is split in two and both halves are rendered in paralell by the threads of
+ * TileRenderer, and the rectangles that have not started are skipped when the frame is cancelled.
+ *
+ * This works because the set and the bands around it have no holes, so a band can not be inside a rectangle
+ * without crossing its border. The only exception is a rectangle that goes around the whole set, so rectangles
+ * that contain 0 (which is in the set) are always split. Julia sets that are not connected can have an island
+ * of a band inside a rectangle, and the fill can not give the pixels their own fraction of smooth coloring,
+ * so MandelbrotGenerator renders those with brute force instead.
+ */
+
+public class SubdivisionRenderer {
+
+	//rectangles smaller than this are calculated pixel by pixel
+	private final int minimumsize = 6;
+
+	private TileRenderer tiles;
+	private PixelKernel kernel;
+	private float [] IterationsUpscaled;
+	private boolean [] Calculated;
+	private int fullwidth, fullheight;
+
+	//the position of 0 in the upscaled picture
+	private double xorigin, yorigin;
+
+	private LongAdder iteratedpixels;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public SubdivisionRenderer(){
+
+		Calculated = new boolean[0];
+		iteratedpixels = new LongAdder();
+	}
+
+	/**
+	 * Renders the whole upscaled picture into the array with the kernel. The kernel must already have its
+	 * settings for the frame and the array must be cleared. xorigin and yorigin is the position of 0 in the picture
+	 */
+	public void render(TileRenderer t, PixelKernel k, float [] iterationsupscaled, int w, int h, double xzero, double yzero){
+
+		long starttime = System.currentTimeMillis();
+
+		tiles = t;
+		kernel = k;
+		IterationsUpscaled = iterationsupscaled;
+		fullwidth = w;
+		fullheight = h;
+		xorigin = xzero;
+		yorigin = yzero;
+
+		if(Calculated.length != fullwidth * fullheight){
+			Calculated = new boolean[fullwidth * fullheight];
+		}
+		else{
+			Arrays.fill(Calculated, false);
+		}
+
+		iteratedpixels.reset();
+
+		//the border of the whole picture is calculated before the first rectangle
+		for(int x = 0; x < fullwidth; x++){
+			calculate(x, 0);
+			calculate(x, fullheight - 1);
+		}
+
+		for(int y = 0; y < fullheight; y++){
+			calculate(0, y);
+			calculate(fullwidth - 1, y);
+		}
+
+		tiles.invoke(new Rectangle(0, 0, fullwidth - 1, fullheight - 1));
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Calculates one pixel if it has not already been calculated
+	 */
+	private void calculate(int x, int y){
+
+		if(!Calculated[y * fullwidth + x]){
+			kernel.calculatePixel(x, y);
+			Calculated[y * fullwidth + x] = true;
+			iteratedpixels.increment();
+		}
+	}
+
+	/**
+	 * A part of the picture where the border is already calculated. The corners are included in the rectangle
+	 */
+	private class Rectangle extends RecursiveAction{
+
+		private static final long serialVersionUID = 1L;
+
+		private final int left, top, right, bottom;
+
+		public Rectangle(int left, int top, int right, int bottom){
+			this.left = left;
+			this.top = top;
+			this.right = right;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(tiles.isCancelled()){
+				return;
+			}
+
+			//small rectangles are faster to calculate than to split
+			if(right - left < minimumsize || bottom - top < minimumsize){
+				for(int y = top + 1; y < bottom; y++){
+					for(int x = left + 1; x < right; x++){
+						calculate(x, y);
+					}
+				}
+				return;
+			}
+
+			if(!containsOrigin() && hasUniformBorder()){
+				fill();
+				return;
+			}
+
+			//splits the longest side and calculates the line between the two halves
+			if(right - left >= bottom - top){
+				int middle = (left + right) / 2;
+
+				for(int y = top + 1; y < bottom; y++){
+					calculate(middle, y);
+				}
+
+				invokeAll(new Rectangle(left, top, middle, bottom), new Rectangle(middle, top, right, bottom));
+			}
+
+			else{
+				int middle = (top + bottom) / 2;
+
+				for(int x = left + 1; x < right; x++){
+					calculate(x, middle);
+				}
+
+				invokeAll(new Rectangle(left, top, right, middle), new Rectangle(left, middle, right, bottom));
+			}
+		}
+
+		/**
+		 * Returns true if 0 is inside the rectangle
+		 */
+		private boolean containsOrigin(){
+			return xorigin >= left && xorigin <= right && yorigin >= top && yorigin <= bottom;
+		}
+
+		/**
+		 * Returns true if every pixel on the border has the same color as the top left corner
+		 */
+		private boolean hasUniformBorder(){
+
+			for(int x = left; x <= right; x++){
+				if(!sameColor(x, top) || !sameColor(x, bottom)){
+					return false;
+				}
+			}
+
+			for(int y = top; y <= bottom; y++){
+				if(!sameColor(left, y) || !sameColor(right, y)){
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * Returns true if the pixel escaped after as many whole iterations as the top left corner, which gives it the same color
+		 */
+		private boolean sameColor(int x, int y){
+			return (int) IterationsUpscaled[y * fullwidth + x] == (int) IterationsUpscaled[top * fullwidth + left];
+		}
+
+		/**
+		 * Gives every pixel inside the border the iterations of the border
+		 */
+		private void fill(){
+
+			float band = IterationsUpscaled[top * fullwidth + left];
+
+			for(int y = top + 1; y < bottom; y++){
+				for(int x = left + 1; x < right; x++){
+					IterationsUpscaled[y * fullwidth + x] = band;
+					Calculated[y * fullwidth + x] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns how many pixels were calculated during the last frame, the rest were filled
+	 */
+	public long getIteratedPixels(){
+		return iteratedpixels.sum();
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
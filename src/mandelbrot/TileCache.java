@@ -0,0 +1,277 @@
+package mandelbrot;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.FloatBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the iterations of the tiles that were calculated by QuadtreeRenderer, so that a part of the set that
+ * is seen again does not have to be calculated again. The tiles that were used the longest time ago are removed
+ * once the tiles take more memory than the budget.
+ *
+ * With a TileStore the tiles are also written to a file, and a tile that is not in memory is read from the file.
+ */
+
+public class TileCache {
+
+	//the memory a tile takes besides its iterations, roughly the key and the entry in the map
+	private static final int tileoverhead = 128;
+
+	//the tiles in the order they were used, the first one is the oldest
+	private LinkedHashMap<Key, float []> Tiles;
+	private long budget, bytes;
+	private long hits, misses, evictions, storehits;
+
+	//the file the tiles are also kept in, or null
+	private TileStore store;
+
+	public TileCache(long budget){
+
+		Tiles = new LinkedHashMap<Key, float []>(16, 0.75f, true);
+		setBudget(budget);
+	}
+
+	/**
+	 * The position of a tile and everything that changes its iterations
+	 */
+	public static class Key{
+
+		private final int level;
+		private final long xtile, ytile;
+		private final boolean renderjuliaset, smoothcoloring;
+		private final double juliavaluereal, juliavalueimaginary;
+		private final int imagedetail;
+
+		public Key(int level, long xtile, long ytile, boolean renderjuliaset, double juliavaluereal,
+				double juliavalueimaginary, int imagedetail, boolean smoothcoloring){
+
+			this.level = level;
+			this.xtile = xtile;
+			this.ytile = ytile;
+			this.renderjuliaset = renderjuliaset;
+			//the julia values do not matter for the mandelbrot set
+			this.juliavaluereal = renderjuliaset ? juliavaluereal : 0;
+			this.juliavalueimaginary = renderjuliaset ? juliavalueimaginary : 0;
+			this.imagedetail = imagedetail;
+			this.smoothcoloring = smoothcoloring;
+		}
+
+		//the parts of the key, so that it can be stored with the tile
+		public int getLevel(){
+			return level;
+		}
+
+		public long getXTile(){
+			return xtile;
+		}
+
+		public long getYTile(){
+			return ytile;
+		}
+
+		public boolean getRenderJuliaSet(){
+			return renderjuliaset;
+		}
+
+		public double getJuliaValueReal(){
+			return juliavaluereal;
+		}
+
+		public double getJuliaValueImaginary(){
+			return juliavalueimaginary;
+		}
+
+		public int getImageDetail(){
+			return imagedetail;
+		}
+
+		public boolean getSmoothColoring(){
+			return smoothcoloring;
+		}
+
+		@Override
+		public boolean equals(Object o){
+
+			if(!(o instanceof Key)){
+				return false;
+			}
+
+			Key k = (Key) o;
+
+			return level == k.level && xtile == k.xtile && ytile == k.ytile && renderjuliaset == k.renderjuliaset
+					&& juliavaluereal == k.juliavaluereal && juliavalueimaginary == k.juliavalueimaginary
+					&& imagedetail == k.imagedetail && smoothcoloring == k.smoothcoloring;
+		}
+
+		@Override
+		public int hashCode(){
+			return Objects.hash(level, xtile, ytile, renderjuliaset, juliavaluereal, juliavalueimaginary, imagedetail, smoothcoloring);
+		}
+	}
+
+	/**
+	 * Returns the iterations of the tile, or null if it is neither in the cache nor in the store
+	 */
+	public synchronized FloatBuffer get(Key key) throws UncheckedIOException{
+
+		float [] Tile = Tiles.get(key);
+
+		if(Tile != null){
+			hits++;
+			return FloatBuffer.wrap(Tile);
+		}
+
+		FloatBuffer Stored = null;
+
+		if(store != null){
+			try{
+				Stored = store.get(key);
+			}
+			catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		if(Stored != null){
+			storehits++;
+		}
+		else{
+			misses++;
+		}
+
+		return Stored;
+	}
+
+	/**
+	 * Adds the iterations of a tile, and removes the oldest tiles until the cache fits in its budget
+	 */
+	public synchronized void put(Key key, float [] Tile) throws UncheckedIOException{
+
+		float [] Previous = Tiles.put(key, Tile);
+
+		if(Previous != null){
+			bytes -= getSize(Previous);
+		}
+
+		bytes += getSize(Tile);
+		evict();
+
+		if(store != null){
+			try{
+				store.put(key, Tile);
+			}
+			catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest tiles until the cache fits in its budget
+	 */
+	private void evict(){
+
+		Iterator<Map.Entry<Key, float []>> iterator = Tiles.entrySet().iterator();
+
+		while(bytes > budget && iterator.hasNext()){
+			bytes -= getSize(iterator.next().getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns roughly how much memory a tile takes
+	 */
+	private static long getSize(float [] Tile){
+		return 4L * Tile.length + tileoverhead;
+	}
+
+	/**
+	 * Removes every tile
+	 */
+	public synchronized void clear(){
+		Tiles.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Sets the file the tiles are also kept in, or null to keep them only in memory
+	 */
+	public synchronized void setStore(TileStore s){
+		store = s;
+	}
+
+	/**
+	 * Returns the file the tiles are also kept in, or null
+	 */
+	public synchronized TileStore getStore(){
+		return store;
+	}
+
+	/**
+	 * Sets how many bytes the tiles may take, the oldest tiles are removed if they take more
+	 */
+	public synchronized void setBudget(long b) throws IllegalArgumentException{
+
+		if(b >= 0){
+			budget = b;
+			evict();
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + b);
+		}
+	}
+
+	/**
+	 * Returns how many bytes the tiles may take
+	 */
+	public synchronized long getBudget(){
+		return budget;
+	}
+
+	/**
+	 * Returns roughly how many bytes the tiles take now
+	 */
+	public synchronized long getBytes(){
+		return bytes;
+	}
+
+	/**
+	 * Returns how many tiles are in the cache
+	 */
+	public synchronized int getTileCount(){
+		return Tiles.size();
+	}
+
+	/**
+	 * Returns how many tiles were found in the cache
+	 */
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	/**
+	 * Returns how many tiles were not in memory but were read from the store
+	 */
+	public synchronized long getStoreHits(){
+		return storehits;
+	}
+
+	/**
+	 * Returns how many tiles were not in the cache and had to be calculated
+	 */
+	public synchronized long getMisses(){
+		return misses;
+	}
+
+	/**
+	 * Returns how many tiles were removed to keep the cache within its budget
+	 */
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+}
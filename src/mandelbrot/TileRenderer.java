@@ -0,0 +1,214 @@
+package mandelbrot;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Renders the upscaled picture on the CPU with a pool of its own threads. The picture is split in two until the tiles
+ * are small, and the halves are put in the queue of the thread that split them.
+ * A thread that runs out of tiles steals one from another thread, so the threads that get the inside of the
+ * set (which takes the longest) get help from the others instead of finishing last.
+ *
+ * A tile is only split while the other threads have little to steal, so the tiles stay large when all threads are busy.
+ *
+ * A frame can be cancelled from another thread, the tiles that have started are finished and the rest are skipped.
+ */
+
+public class TileRenderer {
+
+	//tiles with fewer pixels than this are never split
+	private final int minimumarea = 1024;
+
+	//a tile is split while the queue of its thread has fewer surplus tiles than this
+	private final int surplustiles = 3;
+
+	private PixelKernel kernel;
+	private ForkJoinPool pool;
+	private int parallelism;
+
+	//set from another thread to skip the tiles that have not started
+	private volatile boolean cancelled;
+
+	//stores how long rendering takes
+	private int timetorender;
+
+	public TileRenderer(){
+		setParallelism(getAvailableProcessors());
+	}
+
+	/**
+	 * Renders the whole upscaled picture with the kernel. The kernel must already have its settings for the frame
+	 * and the array must be cleared
+	 */
+	public void render(PixelKernel k, int w, int h){
+		render(k, 0, 0, w, h);
+	}
+
+	/**
+	 * Renders only a part of the upscaled picture with the kernel, the right and bottom edges are not included.
+	 * The kernel must already have its settings for the frame and the part must be cleared
+	 */
+	public void render(PixelKernel k, int left, int top, int right, int bottom){
+
+		long starttime = System.currentTimeMillis();
+
+		kernel = k;
+		pool.invoke(new Tile(left, top, right, bottom));
+
+		timetorender = (int) (System.currentTimeMillis() - starttime);
+	}
+
+	/**
+	 * Runs a task of a renderer that splits the picture in its own way in the threads of the renderer, so it uses as
+	 * many threads as the tiles. The task has to check isCancelled() itself
+	 */
+	public void invoke(ForkJoinTask<?> task){
+		pool.invoke(task);
+	}
+
+	/**
+	 * Runs the action for every index from 0 to count in the threads of the renderer, for renderers that do not work
+	 * on tiles of the picture. The indices are split in two while there are more than grain of them, and the ones
+	 * that have not started are skipped when the frame is cancelled
+	 */
+	public void forEach(int count, int grain, IntConsumer action){
+		pool.invoke(new Range(action, 0, count, Math.max(1, grain)));
+	}
+
+	/**
+	 * Indices of the action of forEach(), the end is not included
+	 */
+	private class Range extends RecursiveAction{
+
+		private static final long serialVersionUID = 1L;
+
+		private final IntConsumer action;
+		private final int start, end, grain;
+
+		public Range(IntConsumer action, int start, int end, int grain){
+			this.action = action;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(cancelled){
+				return;
+			}
+
+			if(end - start <= grain){
+				for(int i = start; i < end; i++){
+					action.accept(i);
+				}
+			}
+
+			else{
+				int middle = (start + end) / 2;
+				invokeAll(new Range(action, start, middle, grain), new Range(action, middle, end, grain));
+			}
+		}
+	}
+
+	/**
+	 * A part of the picture, the right and bottom edges are not included
+	 */
+	private class Tile extends RecursiveAction{
+
+		private static final long serialVersionUID = 1L;
+
+		private final int left, top, right, bottom;
+
+		public Tile(int left, int top, int right, int bottom){
+			this.left = left;
+			this.top = top;
+			this.right = right;
+			this.bottom = bottom;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(cancelled){
+				return;
+			}
+
+			if((right - left) * (bottom - top) < 2 * minimumarea || getSurplusQueuedTaskCount() >= surplustiles){
+				kernel.calculateTile(left, top, right, bottom);
+			}
+
+			//rows are kept whole as long as possible since the kernels calculate a row faster than a column
+			else if(right - left > 4 * (bottom - top)){
+				int middle = (left + right) / 2;
+				invokeAll(new Tile(left, top, middle, bottom), new Tile(middle, top, right, bottom));
+			}
+
+			else{
+				int middle = (top + bottom) / 2;
+				invokeAll(new Tile(left, top, right, middle), new Tile(left, middle, right, bottom));
+			}
+		}
+	}
+
+	/**
+	 * Sets how many threads render the picture. It is limited to the number of processors the program may use,
+	 * which inside a container is the CPU limit of the container and not the size of the machine
+	 */
+	public void setParallelism(int threads) throws IllegalArgumentException{
+
+		if(threads < 1){
+			throw new IllegalArgumentException("Invalid value: " + threads);
+		}
+
+		threads = Math.min(threads, getAvailableProcessors());
+
+		if(pool != null && threads == parallelism){
+			return;
+		}
+
+		if(pool != null){
+			pool.shutdown();
+		}
+
+		parallelism = threads;
+		pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * If true, the tiles that have not started are skipped until it is set to false again
+	 */
+	public void setCancelled(boolean b){
+		cancelled = b;
+	}
+
+	/**
+	 * Returns whether the tiles that have not started are skipped
+	 */
+	public boolean isCancelled(){
+		return cancelled;
+	}
+
+	/**
+	 * Returns how many threads render the picture
+	 */
+	public int getParallelism(){
+		return parallelism;
+	}
+
+	/**
+	 * Returns how many processors the program may use, the JVM already takes the CPU limits of the container into account
+	 */
+	public static int getAvailableProcessors(){
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Returns the time it took to render the last frame
+	 */
+	public int getTimetorender(){
+		return timetorender;
+	}
+}
@@ -0,0 +1,289 @@
+package mandelbrot;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the tiles of TileCache in a file, so the tiles that have been calculated are still there after the program
+ * is started again. The file is a row of records of the same size, a record is a header with the key of the tile
+ * followed by the iterations. The file is mapped into memory a segment at a time and a tile is read directly
+ * from the mapped file without copying it.
+ *
+ * Only the headers are read when the file is opened, the index from the keys to the records is built from them.
+ * Every header has a checksum of the key and the iterations, which is written after the iterations. A record that
+ * was not written to the end when the program or machine crashed has the wrong checksum, so it is thrown away the
+ * first time it is read instead of giving a picture with wrong tiles.
+ *
+ * The file never gets larger than its budget, when it is full the record of the tile that was used the longest time ago is reused.
+ */
+
+public class TileStore implements Closeable{
+
+	//the header takes one page so that the iterations start on a page of their own
+	private static final int headersize = 4096;
+	private static final int tilesize = 4 * QuadtreeRenderer.TILESIZE * QuadtreeRenderer.TILESIZE;
+	private static final int recordsize = headersize + tilesize;
+
+	//records that are mapped together
+	private static final int segmentrecords = 64;
+
+	//the first int of a header that holds a tile
+	private static final int magic = 0x4d54494c;
+
+	private FileChannel channel;
+	private MappedByteBuffer [] Segments;
+	private int capacity, used;
+
+	//the records of the tiles in the order they were used, the first one is the oldest
+	private LinkedHashMap<TileCache.Key, Integer> Index;
+
+	//records whose checksum has been checked since the file was opened
+	private BitSet Verified;
+
+	//records that do not hold a tile
+	private ArrayDeque<Integer> Free;
+
+	private long evictions, corrupted;
+
+	/**
+	 * Opens the file, or creates it if it does not exist. The file holds as many tiles as fit in the budget
+	 */
+	public TileStore(File file, long budget) throws IOException, IllegalArgumentException{
+
+		capacity = (int) Math.min(Integer.MAX_VALUE, budget / recordsize);
+
+		if(capacity < 1){
+			throw new IllegalArgumentException("Invalid value: " + budget);
+		}
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		//a file from a larger budget loses the records that do not fit
+		if(channel.size() > (long) capacity * recordsize){
+			channel.truncate((long) capacity * recordsize);
+		}
+
+		Segments = new MappedByteBuffer[(capacity + segmentrecords - 1) / segmentrecords];
+		Index = new LinkedHashMap<TileCache.Key, Integer>(16, 0.75f, true);
+		Verified = new BitSet(capacity);
+		Free = new ArrayDeque<Integer>();
+
+		used = (int) (channel.size() / recordsize);
+
+		for(int record = 0; record < used; record++){
+
+			TileCache.Key key = readKey(record);
+
+			if(key != null){
+				Index.put(key, record);
+			}
+			else{
+				Free.add(record);
+			}
+		}
+	}
+
+	/**
+	 * Returns the iterations of the tile as a view of the mapped file, or null if it is not in the file.
+	 * The iterations are only valid until the next tile is stored
+	 */
+	public synchronized FloatBuffer get(TileCache.Key key) throws IOException{
+
+		Integer record = Index.get(key);
+
+		if(record == null){
+			return null;
+		}
+
+		if(!Verified.get(record)){
+
+			if(getChecksum(record) != getSegment(record).getLong(position(record) + 8)){
+				Index.remove(key);
+				getSegment(record).putInt(position(record), 0);
+				Free.add(record);
+				corrupted++;
+				return null;
+			}
+
+			Verified.set(record);
+		}
+
+		MappedByteBuffer segment = getSegment(record);
+		segment.position(position(record) + headersize);
+		segment.limit(position(record) + recordsize);
+
+		FloatBuffer Tile = segment.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		segment.clear();
+
+		return Tile;
+	}
+
+	/**
+	 * Writes the tile to the file, in a new record if the file is not full and otherwise in the record of
+	 * the tile that was used the longest time ago
+	 */
+	public synchronized void put(TileCache.Key key, float [] Tile) throws IOException{
+
+		Integer record = Index.get(key);
+
+		if(record == null && !Free.isEmpty()){
+			record = Free.poll();
+		}
+
+		else if(record == null && used < capacity){
+			record = used++;
+		}
+
+		else if(record == null){
+			Iterator<Map.Entry<TileCache.Key, Integer>> oldest = Index.entrySet().iterator();
+			record = oldest.next().getValue();
+			oldest.remove();
+			evictions++;
+		}
+
+		MappedByteBuffer segment = getSegment(record);
+		int position = position(record);
+
+		//the old tile is no longer in the record as soon as the iterations are written
+		segment.putInt(position, 0);
+
+		segment.position(position + headersize);
+		segment.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(Tile);
+		segment.clear();
+
+		segment.putInt(position + 16, key.getLevel());
+		segment.putLong(position + 20, key.getXTile());
+		segment.putLong(position + 28, key.getYTile());
+		segment.putInt(position + 36, (key.getRenderJuliaSet() ? 1 : 0) | (key.getSmoothColoring() ? 2 : 0));
+		segment.putInt(position + 40, key.getImageDetail());
+		segment.putDouble(position + 44, key.getJuliaValueReal());
+		segment.putDouble(position + 52, key.getJuliaValueImaginary());
+
+		//the checksum and the magic number are written last, the record is only read if they match the rest of it
+		segment.putLong(position + 8, getChecksum(record));
+		segment.putInt(position, magic);
+
+		Index.put(key, record);
+		Verified.set(record);
+	}
+
+	/**
+	 * Reads the key of a record, or returns null if the record does not hold a tile
+	 */
+	private TileCache.Key readKey(int record) throws IOException{
+
+		MappedByteBuffer segment = getSegment(record);
+		int position = position(record);
+
+		if(segment.getInt(position) != magic){
+			return null;
+		}
+
+		int flags = segment.getInt(position + 36);
+
+		return new TileCache.Key(segment.getInt(position + 16), segment.getLong(position + 20), segment.getLong(position + 28),
+				(flags & 1) != 0, segment.getDouble(position + 44), segment.getDouble(position + 52),
+				segment.getInt(position + 40), (flags & 2) != 0);
+	}
+
+	/**
+	 * Returns the checksum of the key and the iterations of a record
+	 */
+	private long getChecksum(int record) throws IOException{
+
+		MappedByteBuffer segment = getSegment(record);
+		int position = position(record);
+
+		CRC32 crc = new CRC32();
+
+		segment.position(position + 16);
+		segment.limit(position + 60);
+		crc.update(segment);
+
+		segment.limit(position + recordsize);
+		segment.position(position + headersize);
+		crc.update(segment);
+
+		segment.clear();
+
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the mapped segment a record is in, the segment is mapped the first time it is needed
+	 */
+	private MappedByteBuffer getSegment(int record) throws IOException{
+
+		int index = record / segmentrecords;
+
+		if(Segments[index] == null){
+			long records = Math.min(segmentrecords, capacity - (long) index * segmentrecords);
+			Segments[index] = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentrecords * recordsize, records * recordsize);
+		}
+
+		return Segments[index];
+	}
+
+	/**
+	 * Returns where a record starts in its segment
+	 */
+	private int position(int record){
+		return (record % segmentrecords) * recordsize;
+	}
+
+	/**
+	 * Writes the mapped segments to the disk and closes the file
+	 */
+	@Override
+	public synchronized void close() throws IOException{
+
+		for(MappedByteBuffer segment : Segments){
+			if(segment != null){
+				segment.force();
+			}
+		}
+
+		Segments = new MappedByteBuffer[Segments.length];
+		Index.clear();
+		channel.close();
+	}
+
+	/**
+	 * Returns how many tiles are in the file
+	 */
+	public synchronized int getTileCount(){
+		return Index.size();
+	}
+
+	/**
+	 * Returns how many tiles the file can hold
+	 */
+	public int getCapacity(){
+		return capacity;
+	}
+
+	/**
+	 * Returns how many tiles were overwritten to keep the file within its budget
+	 */
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+
+	/**
+	 * Returns how many tiles were thrown away because they were not completely written
+	 */
+	public synchronized long getCorrupted(){
+		return corrupted;
+	}
+}
@@ -0,0 +1,547 @@
+package mandelbrot;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders the frames of a zoom from one view to another without a window and writes them as numbered PNG files.
+ * The work is split in three stages that run at the same time: the iterations of a frame are calculated by a
+ * MandelbrotGenerator, colored by an AntialiasingKernel of their own, and encoded to a file by one or more threads.
+ * The stages are connected by short queues, so a stage that is ahead waits for the next one instead of filling
+ * the memory with frames.
+ *
+ * Every stage counts how long it worked and how long it waited, the stage that waits the least is the one that
+ * holds up the others. When a stage fails the others are stopped, since they would wait forever on their queues.
+ *
+ * With the exponential map the render stage first calculates one ExponentialMapRenderer strip around the last view
+ * that covers every frame, and then only looks the frames up in it.
+ */
+
+public class ZoomVideo {
+
+	/**
+	 * The stages a frame goes through
+	 */
+	public enum Stage {
+		Render, Color, Encode
+	}
+
+	//frames that can wait between two stages
+	private final int queuesize = 4;
+
+	//how often a stage that waits on a queue checks if the video was stopped, in milliseconds
+	private final int waitstep = 100;
+
+	private MandelbrotGenerator generator;
+	private int width, height, frames, encoders;
+	private boolean exponentialmap;
+
+	//the first and the last view of the zoom
+	private BigDecimal xstart, ystart, xend, yend;
+	private double magnificationstart, magnificationend;
+
+	//the frames, the time worked and the time waited of every stage in nanoseconds
+	private AtomicLong [] Frames, Busy, Waiting;
+
+	//set when a stage failed, interrupts alone do not stop the stages since the kernels can swallow them
+	private volatile boolean stopped;
+
+	//stores how long rendering takes
+	private long timetorender;
+
+	public ZoomVideo(int w, int h){
+
+		width = w;
+		height = h;
+		frames = 2;
+		encoders = 2;
+		generator = new MandelbrotGenerator(width, height);
+
+		xstart = xend = BigDecimal.ZERO;
+		ystart = yend = BigDecimal.ZERO;
+		magnificationstart = magnificationend = 1;
+
+		Frames = new AtomicLong[Stage.values().length];
+		Busy = new AtomicLong[Stage.values().length];
+		Waiting = new AtomicLong[Stage.values().length];
+
+		for(int i = 0; i < Frames.length; i++){
+			Frames[i] = new AtomicLong();
+			Busy[i] = new AtomicLong();
+			Waiting[i] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Renders a zoom from the command line, run without arguments to see them
+	 */
+	public static void main(String [] args) throws IOException{
+
+		if(args.length < 10){
+			System.out.println("Usage: ZoomVideo directory width height frames x1 y1 magnification1 x2 y2 magnification2 [antialiasing [expmap]]");
+			return;
+		}
+
+		ZoomVideo video = new ZoomVideo(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		video.setFrames(Integer.parseInt(args[3]));
+		video.setStart(new BigDecimal(args[4]), new BigDecimal(args[5]), Double.parseDouble(args[6]));
+		video.setEnd(new BigDecimal(args[7]), new BigDecimal(args[8]), Double.parseDouble(args[9]));
+
+		if(args.length >= 11){
+			video.getGenerator().setCurrentAntialiasing(Integer.parseInt(args[10]));
+		}
+
+		if(args.length >= 12){
+			video.enableExponentialMap(args[11].equals("expmap"));
+		}
+
+		video.render(new File(args[0]));
+
+		System.out.println("Rendered " + video.getFrames() + " frames in " + video.getTimetorender() + " ms");
+
+		for(Stage stage : Stage.values()){
+			System.out.printf("%-7s %8.1f frames/s  busy %6d ms  waiting %6d ms%n", stage, video.getFramesPerSecond(stage),
+					video.getBusyTime(stage), video.getWaitingTime(stage));
+		}
+	}
+
+	/**
+	 * A frame on its way through the stages
+	 */
+	private static class Frame {
+
+		private final int index;
+		private float [] Iterations;
+		private double iterationlimit;
+		private int [] Pixels;
+
+		private Frame(int i){
+			index = i;
+		}
+	}
+
+	//tells the next stage that there are no more frames
+	private static final Frame last = new Frame(-1);
+
+	/**
+	 * Renders every frame of the zoom and writes frame00000.png, frame00001.png and so on to the directory
+	 */
+	public void render(File directory) throws IOException{
+
+		long starttime = System.currentTimeMillis();
+
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Could not create " + directory);
+		}
+
+		for(int i = 0; i < Frames.length; i++){
+			Frames[i].set(0);
+			Busy[i].set(0);
+			Waiting[i].set(0);
+		}
+
+		BlockingQueue<Frame> Rendered = new ArrayBlockingQueue<Frame>(queuesize);
+		BlockingQueue<Frame> Colored = new ArrayBlockingQueue<Frame>(queuesize);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2 + encoders);
+		CompletionService<Void> Finished = new ExecutorCompletionService<Void>(executor);
+		List<Future<Void>> Stages = new ArrayList<Future<Void>>();
+
+		stopped = false;
+
+		Stages.add(Finished.submit(() -> {
+			renderFrames(Rendered);
+			return null;
+		}));
+
+		Stages.add(Finished.submit(() -> {
+			colorFrames(Rendered, Colored);
+			return null;
+		}));
+
+		for(int i = 0; i < encoders; i++){
+			Stages.add(Finished.submit(() -> {
+				encodeFrames(Colored, directory);
+				return null;
+			}));
+		}
+
+		try{
+			//the stages are waited for in the order they finish, so a stage that fails is seen at once and not
+			//after a stage that waits forever on its queue for the stage that failed
+			for(int i = 0; i < Stages.size(); i++){
+				Finished.take().get();
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+		finally{
+			stop(executor, Stages);
+		}
+
+		timetorender = System.currentTimeMillis() - starttime;
+	}
+
+	/**
+	 * Stops the stages that are left and waits for them to end, so none of them still uses the generator once the
+	 * video returns. They stop waiting on their queues, and the frame that is calculated stops at the next tile
+	 */
+	private void stop(ExecutorService executor, List<Future<Void>> Stages){
+
+		stopped = true;
+		generator.setCancelled(true);
+
+		for(Future<Void> stage : Stages){
+			stage.cancel(true);
+		}
+
+		executor.shutdownNow();
+
+		try{
+			while(!executor.awaitTermination(waitstep, TimeUnit.MILLISECONDS)){
+				//a stage ends once its frame is done
+			}
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+
+		generator.setCancelled(false);
+	}
+
+	/**
+	 * The first stage, calculates the iterations of every frame
+	 */
+	private void renderFrames(BlockingQueue<Frame> Rendered) throws InterruptedException{
+
+		generator.enableExponentialMap(false);
+
+		if(exponentialmap){
+
+			long starttime = System.nanoTime();
+			mapFrames();
+			Busy[Stage.Render.ordinal()].addAndGet(System.nanoTime() - starttime);
+		}
+
+		for(int i = 0; i < frames; i++){
+
+			long starttime = System.nanoTime();
+
+			setView(i);
+			generator.calculateIterations();
+
+			Frame frame = new Frame(i);
+			frame.Iterations = generator.getIterationsUpscaled().clone();
+			frame.iterationlimit = generator.getIterationLimit();
+
+			finish(Stage.Render, starttime);
+			put(Stage.Render, Rendered, frame);
+		}
+
+		put(Stage.Render, Rendered, last);
+	}
+
+	/**
+	 * The second stage, colors and antialiases the iterations with the colors of the generator
+	 */
+	private void colorFrames(BlockingQueue<Frame> Rendered, BlockingQueue<Frame> Colored) throws InterruptedException{
+
+		AntialiasingKernel aakernel = new AntialiasingKernel(width, height);
+		aakernel.setAntialiasing(generator.getCurrentAntialiasing());
+
+		Palette palette = new Palette();
+		palette.setRedSensitivity(generator.getRedSensitivity());
+		palette.setGreenSensitivity(generator.getGreenSensitivity());
+		palette.setBlueSensitivity(generator.getBlueSensitivity());
+		palette.setOffset(generator.getColorOffset());
+		palette.setSmoothColoring(generator.getSmoothColoring());
+
+		try{
+			for(Frame frame = take(Stage.Color, Rendered); frame != last; frame = take(Stage.Color, Rendered)){
+
+				long starttime = System.nanoTime();
+
+				palette.update(frame.iterationlimit);
+				frame.Pixels = new int[width * height];
+
+				aakernel.setPalette(palette);
+				aakernel.setSource(frame.Iterations);
+				aakernel.setTarget(frame.Pixels);
+				aakernel.execute(width * height);
+				frame.Iterations = null;
+
+				finish(Stage.Color, starttime);
+				put(Stage.Color, Colored, frame);
+			}
+		}
+		finally{
+			aakernel.dispose();
+		}
+
+		//every encoder stops when it gets the last frame
+		for(int i = 0; i < encoders; i++){
+			put(Stage.Color, Colored, last);
+		}
+	}
+
+	/**
+	 * The last stage, writes the colored frames to their files
+	 */
+	private void encodeFrames(BlockingQueue<Frame> Colored, File directory) throws InterruptedException, IOException{
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		for(Frame frame = take(Stage.Encode, Colored); frame != last; frame = take(Stage.Encode, Colored)){
+
+			long starttime = System.nanoTime();
+
+			image.setRGB(0, 0, width, height, frame.Pixels, 0, width);
+			ImageIO.write(image, "png", new File(directory, String.format("frame%05d.png", frame.index)));
+
+			finish(Stage.Encode, starttime);
+		}
+	}
+
+	/**
+	 * Counts a frame that a stage is done with
+	 */
+	private void finish(Stage stage, long starttime){
+		Frames[stage.ordinal()].incrementAndGet();
+		Busy[stage.ordinal()].addAndGet(System.nanoTime() - starttime);
+	}
+
+	/**
+	 * Hands a frame to the next stage, and counts the time the stage waited for room in the queue. Stops waiting
+	 * when the video was stopped
+	 */
+	private void put(Stage stage, BlockingQueue<Frame> queue, Frame frame) throws InterruptedException{
+
+		long starttime = System.nanoTime();
+
+		while(!queue.offer(frame, waitstep, TimeUnit.MILLISECONDS)){
+			if(stopped){
+				throw new InterruptedException("The video was stopped");
+			}
+		}
+
+		Waiting[stage.ordinal()].addAndGet(System.nanoTime() - starttime);
+	}
+
+	/**
+	 * Takes a frame from the previous stage, and counts the time the stage waited for it. Stops waiting when the
+	 * video was stopped
+	 */
+	private Frame take(Stage stage, BlockingQueue<Frame> queue) throws InterruptedException{
+
+		long starttime = System.nanoTime();
+		Frame frame;
+
+		while((frame = queue.poll(waitstep, TimeUnit.MILLISECONDS)) == null){
+			if(stopped){
+				throw new InterruptedException("The video was stopped");
+			}
+		}
+
+		Waiting[stage.ordinal()].addAndGet(System.nanoTime() - starttime);
+
+		return frame;
+	}
+
+	/**
+	 * Calculates the exponential map around the last view, out to the corner of the frame that reaches the farthest
+	 * from it. Zooms that are too deep for doubles can not be mapped and are calculated frame by frame
+	 */
+	private void mapFrames(){
+
+		double ratio = (double) height / width;
+		double radius = 0;
+
+		for(int i = 0; i < frames; i++){
+
+			setView(i);
+
+			double magnification = generator.getMagnification();
+			double xoffset = Math.abs(generator.getXCenterExact().subtract(xend).doubleValue()) + 2 / magnification;
+			double yoffset = (Math.abs(generator.getYCenterExact().subtract(yend).doubleValue()) + 2 / magnification) * ratio;
+
+			radius = Math.max(radius, Math.hypot(xoffset, yoffset));
+		}
+
+		generator.setCoordinates(xend, yend);
+
+		try{
+			generator.calculateExponentialMap(2 * Math.hypot(1, ratio) / radius, Math.max(magnificationstart, magnificationend));
+			generator.enableExponentialMap(true);
+		}
+		catch(IllegalArgumentException e){
+			generator.enableExponentialMap(false);
+		}
+	}
+
+	/**
+	 * Moves the generator to a frame of the zoom. The magnification grows by the same factor every frame, and the
+	 * center moves as much as the width of the view shrinks, so the zoom looks as steady as the zoom of the canvas
+	 */
+	private void setView(int frame){
+
+		double t = frames > 1 ? (double) frame / (frames - 1) : 1;
+		double magnification = magnificationstart * Math.pow(magnificationend / magnificationstart, t);
+
+		double move = t;
+
+		if(magnificationstart != magnificationend){
+			move = (1 / magnification - 1 / magnificationstart) / (1 / magnificationend - 1 / magnificationstart);
+		}
+
+		MathContext context = new MathContext(20 + (int) Math.max(0, Math.log10(Math.max(magnificationstart, magnificationend))));
+		BigDecimal m = new BigDecimal(move, context);
+
+		generator.setMagnification(magnification);
+		generator.setCoordinates(xstart.add(xend.subtract(xstart).multiply(m, context)), ystart.add(yend.subtract(ystart).multiply(m, context)));
+	}
+
+	/**
+	 * Sets the view of the first frame
+	 */
+	public void setStart(BigDecimal x, BigDecimal y, double magnification) throws IllegalArgumentException{
+
+		if(magnification <= 0){
+			throw new IllegalArgumentException("Invalid value: " + magnification);
+		}
+
+		xstart = x;
+		ystart = y;
+		magnificationstart = magnification;
+	}
+
+	/**
+	 * Sets the view of the last frame
+	 */
+	public void setEnd(BigDecimal x, BigDecimal y, double magnification) throws IllegalArgumentException{
+
+		if(magnification <= 0){
+			throw new IllegalArgumentException("Invalid value: " + magnification);
+		}
+
+		xend = x;
+		yend = y;
+		magnificationend = magnification;
+	}
+
+	/**
+	 * Sets how many frames the zoom has, the first and the last view included
+	 */
+	public void setFrames(int f) throws IllegalArgumentException{
+
+		if(f >= 1){
+			frames = f;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + f);
+		}
+	}
+
+	/**
+	 * Returns how many frames the zoom has
+	 */
+	public int getFrames(){
+		return frames;
+	}
+
+	/**
+	 * Sets how many threads encode frames at the same time, encoding a PNG is often slower than coloring it
+	 */
+	public void setEncoders(int threads) throws IllegalArgumentException{
+
+		if(threads >= 1){
+			encoders = threads;
+		}
+		else{
+			throw new IllegalArgumentException("Invalid value: " + threads);
+		}
+	}
+
+	/**
+	 * Returns how many threads encode frames at the same time
+	 */
+	public int getEncoders(){
+		return encoders;
+	}
+
+	/**
+	 * If true, the frames are looked up in one exponential map of the zoom instead of being calculated one by one.
+	 * This is much faster for long zooms, the frames are a bit less sharp away from their center
+	 */
+	public void enableExponentialMap(boolean b){
+		exponentialmap = b;
+	}
+
+	/**
+	 * Returns whether the frames are looked up in an exponential map of the zoom
+	 */
+	public boolean exponentialMapIsEnabled(){
+		return exponentialmap;
+	}
+
+	/**
+	 * Returns the generator that calculates the frames, the antialiasing, image detail, julia set and colors
+	 * of the zoom are set on it
+	 */
+	public MandelbrotGenerator getGenerator(){
+		return generator;
+	}
+
+	/**
+	 * Returns how many frames a stage finished in a second of its own work during the last zoom. The stage
+	 * with the fewest is the one that holds up the others, unless it has several threads
+	 */
+	public double getFramesPerSecond(Stage stage){
+
+		long busy = Busy[stage.ordinal()].get();
+
+		return busy > 0 ? Frames[stage.ordinal()].get() * 1e9 / busy : 0;
+	}
+
+	/**
+	 * Returns how long a stage worked on frames during the last zoom, in milliseconds summed over its threads
+	 */
+	public long getBusyTime(Stage stage){
+		return Busy[stage.ordinal()].get() / 1000000;
+	}
+
+	/**
+	 * Returns how long a stage waited for frames or for room in the next queue during the last zoom, in milliseconds
+	 * summed over its threads
+	 */
+	public long getWaitingTime(Stage stage){
+		return Waiting[stage.ordinal()].get() / 1000000;
+	}
+
+	/**
+	 * Returns the time it took to render the last zoom
+	 */
+	public long getTimetorender(){
+		return timetorender;
+	}
+}
@@ -0,0 +1,104 @@
+package mandelbrot;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+
+/**
+ * Checks that the stages of ZoomVideo stop when one of them fails. A short zoom is rendered once into an empty
+ * directory, where every frame has to be written, and once into a directory where the file of the first frame is
+ * taken by a directory that is not empty, so the encoder can not write it and fails. The failing render has to end
+ * with an IOException and not wait forever on the queues of the stages that are left.
+ *
+ * Usage: ZoomVideoCheck, it exits with 1 if a render does not end as expected
+ */
+
+public class ZoomVideoCheck {
+
+	private final int width = 160, height = 120, frames = 24;
+
+	//how long a render may take before it counts as hanging
+	private final long timeout = 60000;
+
+	/**
+	 * Runs the check from the command line
+	 */
+	public static void main(String [] args) throws IOException{
+
+		if(!new ZoomVideoCheck().run()){
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Renders the zoom with and without a failing encoder and prints a line for each. Returns false if a render does
+	 * not end as expected
+	 */
+	public boolean run() throws IOException{
+
+		boolean passed = true;
+
+		File directory = Files.createTempDirectory("zoomvideo").toFile();
+		Throwable failure = render(directory);
+		int written = directory.list().length;
+
+		passed &= failure == null && written == frames;
+
+		System.out.println("Encoder works   " + (failure == null && written == frames ? "ok" : "FAILED with " + failure + ", " + written + " of " + frames + " frames written"));
+
+		directory = Files.createTempDirectory("zoomvideo").toFile();
+		File blocked = new File(directory, String.format("frame%05d.png", 0));
+		blocked.mkdir();
+		new File(blocked, "blocked").createNewFile();
+		failure = render(directory);
+
+		passed &= failure instanceof IOException;
+
+		System.out.println("Encoder fails   " + (failure instanceof IOException ? "ok, " + failure : "FAILED with " + failure));
+
+		System.out.println(passed ? "PASSED" : "FAILED");
+
+		return passed;
+	}
+
+	/**
+	 * Renders the zoom into a directory with one encoder, so nothing is left to take the frames if it fails. Returns
+	 * what the render threw, null if it did not throw, or an InterruptedException if it did not end in time
+	 */
+	private Throwable render(File directory){
+
+		ZoomVideo video = new ZoomVideo(width, height);
+		video.getGenerator().enableGPU(false);
+		video.setFrames(frames);
+		video.setEncoders(1);
+		video.setStart(BigDecimal.ZERO, BigDecimal.ZERO, 1);
+		video.setEnd(new BigDecimal("-0.743643887037151"), new BigDecimal("0.131825904205330"), 1000);
+
+		Throwable [] Failure = new Throwable[1];
+
+		Thread thread = new Thread(() -> {
+			try{
+				video.render(directory);
+			}
+			catch(Throwable e){
+				Failure[0] = e;
+			}
+		});
+
+		thread.setDaemon(true);
+		thread.start();
+
+		try{
+			thread.join(timeout);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+
+		if(thread.isAlive()){
+			return new InterruptedException("the render did not end in " + timeout + " ms");
+		}
+
+		return Failure[0];
+	}
+}